@@ -0,0 +1,116 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs one {@link LoadedProgram} against many independent input vectors on a work stealing pool.
+ * Runs are split recursively, so threads that finish their share early take over work of the others
+ * when some inputs make the program run much longer than others.
+ */
+public class BatchRunner {
+
+    private final ForkJoinPool pool;
+
+    /**
+     * @param parallelism number of runs executed at the same time
+     */
+    public BatchRunner(int parallelism) {
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Runs the program once per input vector and waits for all runs
+     * @param program the loaded program
+     * @param inputs the input vectors, one per run
+     * @return the results in the order of the inputs, with throughput and latency of the batch
+     */
+    public BatchResult run(LoadedProgram program, List<int[]> inputs) {
+        LoadedProgram.RunResult[] results = new LoadedProgram.RunResult[inputs.size()];
+        long startTime = System.nanoTime();
+        pool.invoke(new RunTask(program, inputs, results, 0, results.length));
+        return new BatchResult(List.of(results), System.nanoTime() - startTime);
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    // tasks are never serialized, ForkJoinTask is Serializable only for compatibility
+    @SuppressWarnings("serial")
+    private static final class RunTask extends RecursiveAction {
+
+        private final LoadedProgram program;
+        private final List<int[]> inputs;
+        private final LoadedProgram.RunResult[] results;
+        private final int start;
+        private final int end;
+
+        RunTask(LoadedProgram program, List<int[]> inputs, LoadedProgram.RunResult[] results, int start, int end) {
+            this.program = program;
+            this.inputs = inputs;
+            this.results = results;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start == 1) {
+                results[start] = program.run(inputs.get(start));
+                return;
+            }
+            if (end == start)
+                return;
+            int middle = (start + end) >>> 1;
+            invokeAll(new RunTask(program, inputs, results, start, middle),
+                    new RunTask(program, inputs, results, middle, end));
+        }
+    }
+
+    /**
+     * @param results the result of every run, in the order of the inputs
+     * @param elapsedNanos wall time of the whole batch
+     */
+    public record BatchResult(List<LoadedProgram.RunResult> results, long elapsedNanos) {
+
+        public int failedCount() {
+            int count = 0;
+            for (LoadedProgram.RunResult result: results) {
+                if (!result.isSuccessful())
+                    count++;
+            }
+            return count;
+        }
+
+        /**
+         * @return runs per second
+         */
+        public double throughput() {
+            return elapsedNanos == 0 ? 0 : results.size() * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         * @return latency of a single run in nanoseconds at the given percentile
+         */
+        public long latencyPercentile(double percentile) {
+            if (results.isEmpty())
+                return 0;
+            long[] latencies = new long[results.size()];
+            for (int i = 0; i < latencies.length; i++) {
+                latencies[i] = results.get(i).elapsedNanos();
+            }
+            Arrays.sort(latencies);
+            int rank = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+            return latencies[Math.max(0, Math.min(latencies.length - 1, rank))];
+        }
+
+        public String summary() {
+            return String.format("%d runs, %d failed in %.2f ms, %.1f runs/s, latency p50 %.3f ms p90 %.3f ms "
+                            + "p99 %.3f ms max %.3f ms", results.size(), failedCount(), elapsedNanos / 1e6,
+                    throughput(), latencyPercentile(50) / 1e6, latencyPercentile(90) / 1e6,
+                    latencyPercentile(99) / 1e6, latencyPercentile(100) / 1e6);
+        }
+    }
+}
@@ -0,0 +1,380 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Translates a loaded {@link SILFile} into a JVM class, defined as a hidden class, so that HotSpot can
+ * JIT compile whole SIL loops.
+ * SIL variables become int locals, GOTO and IF become branches, and RET becomes a lookupswitch over the
+ * return addresses pushed by GOSUB. Stack operations, input and output call back into {@link FileParser}.
+ * Programs that cannot be translated are left to the interpreter.
+ */
+public class BytecodeCompiler {
+
+    private static final String CLASS_NAME = "SILCompiledProgram";
+    private static final String PARSER = "FileParser";
+    private static final String RUN_DESCRIPTOR = "(L" + PARSER + ";)V";
+    // HotSpot does not JIT compile methods larger than this, such programs are faster in the interpreter
+    private static final int HUGE_METHOD_LIMIT = 8000;
+
+    // local 0 is this, local 1 is the parser, SIL variables start at local 2 and are followed by one
+    // initialized flag per variable
+    private static final int PARSER_LOCAL = 1;
+    private static final int FIRST_VARIABLE_LOCAL = 2;
+
+    private final Instruction[] instructions;
+    private final int variableCount;
+    private final int firstInitializedFlagLocal;
+    private final int inputArrayLocal;
+    private final int exceptionLocal;
+    private final ClassFileWriter classFile = new ClassFileWriter(CLASS_NAME, "java/lang/Object");
+    private final ClassFileWriter.Code code = new ClassFileWriter.Code(classFile);
+    private final int[] instructionLabels;
+    private int[] returnAddresses;
+    private int[] returnLabels;
+    private int maxStack = 4;
+
+    private BytecodeCompiler(SILFile silFile) {
+        this.instructions = silFile.getInstructions();
+        this.variableCount = silFile.getVariableTable().size();
+        this.firstInitializedFlagLocal = FIRST_VARIABLE_LOCAL + variableCount;
+        this.inputArrayLocal = firstInitializedFlagLocal + variableCount;
+        this.exceptionLocal = inputArrayLocal + 1;
+        this.instructionLabels = new int[instructions.length + 1];
+    }
+
+    /**
+     * @param silFile the loaded program
+     * @param warnings receives the reason when the program cannot be compiled
+     * @return the compiled program, or null when the program uses a construct the compiler does not support
+     */
+    public static CompiledProgram compile(SILFile silFile, List<String> warnings) {
+        if (!isCompilable(silFile)) {
+            warnings.add("Program cannot be compiled to bytecode, it will be interpreted");
+            return null;
+        }
+        try {
+            byte[] classBytes = new BytecodeCompiler(silFile).translate();
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classBytes, true);
+            return (CompiledProgram) lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class))
+                    .invoke();
+        } catch (Throwable e) {
+            warnings.add("Program cannot be compiled to bytecode, it will be interpreted: "+e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * The compiled code keeps variables in locals and does not track whether they are declared, so only
+     * programs that declare every variable they use in the INTEGER instructions they start with are compiled.
+     * Those programs can never read an undeclared variable.
+     */
+    static boolean isCompilable(SILFile silFile) {
+        Instruction[] instructions = silFile.getInstructions();
+        boolean[] isDeclared = new boolean[silFile.getVariableTable().size()];
+        int declaredCount = 0;
+        for (int index = 0; index < instructions.length && instructions[index].opcode == Opcode.INTEGER; index++) {
+            for (int slot: instructions[index].variableSlots) {
+                if (!isDeclared[slot]) {
+                    isDeclared[slot] = true;
+                    declaredCount++;
+                }
+            }
+        }
+        if (declaredCount != isDeclared.length)
+            return false;
+        for (Instruction instruction: instructions) {
+            if (instruction.opcode == Opcode.IF && instruction.thenInstruction != null) {
+                Opcode thenOpcode = instruction.thenInstruction.opcode;
+                if (thenOpcode != Opcode.GOTO && thenOpcode != Opcode.PRINT && thenOpcode != Opcode.PRINTLN)
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    private byte[] translate() {
+        writeConstructor();
+        classFile.addInterface("CompiledProgram");
+        collectReturnAddresses();
+        for (int index = 0; index <= instructions.length; index++) {
+            instructionLabels[index] = code.newLabel();
+        }
+        int exitLabel = instructionLabels[instructions.length];
+        int bodyStartLabel = code.newLabel();
+        int bodyEndLabel = code.newLabel();
+        int handlerLabel = code.newLabel();
+
+        // every variable starts out holding the value of a declared but uninitialized variable
+        for (int slot = 0; slot < variableCount; slot++) {
+            declareVariable(slot);
+        }
+        code.placeLabel(bodyStartLabel);
+        for (int index = 0; index < instructions.length; index++) {
+            code.placeLabel(instructionLabels[index]);
+            translateInstruction(index, instructions[index]);
+        }
+        code.placeLabel(exitLabel);
+        code.placeLabel(bodyEndLabel);
+        writeVariablesBack();
+        code.instruction(ClassFileWriter.Code.RETURN);
+
+        // on failure the variables are written back as well before the exception is rethrown
+        code.placeLabel(handlerLabel);
+        code.localVariable(ClassFileWriter.Code.ASTORE, exceptionLocal);
+        writeVariablesBack();
+        code.localVariable(ClassFileWriter.Code.ALOAD, exceptionLocal);
+        code.instruction(ClassFileWriter.Code.ATHROW);
+        code.addExceptionHandler(bodyStartLabel, bodyEndLabel, handlerLabel);
+
+        if (code.length() > HUGE_METHOD_LIMIT)
+            throw new IllegalStateException("Program too large for the JIT compiler");
+        code.setMaxs(maxStack, exceptionLocal + 1);
+        classFile.addMethod("run", RUN_DESCRIPTOR, code);
+        return classFile.toByteArray();
+    }
+
+    private void writeConstructor() {
+        ClassFileWriter.Code constructor = new ClassFileWriter.Code(classFile);
+        constructor.localVariable(ClassFileWriter.Code.ALOAD, 0);
+        constructor.invoke(ClassFileWriter.Code.INVOKESPECIAL, "java/lang/Object", "<init>", "()V");
+        constructor.instruction(ClassFileWriter.Code.RETURN);
+        constructor.setMaxs(1, 1);
+        classFile.addMethod("<init>", "()V", constructor);
+    }
+
+    /**
+     * A GOSUB pushes the index of the instruction following it, RET switches over all of those indices
+     */
+    private void collectReturnAddresses() {
+        returnAddresses = new int[instructions.length];
+        int count = 0;
+        for (int index = 0; index < instructions.length; index++) {
+            if (instructions[index].opcode == Opcode.GOSUB)
+                returnAddresses[count++] = index + 1;
+        }
+        returnAddresses = Arrays.copyOf(returnAddresses, count);
+        returnLabels = new int[count];
+    }
+
+    private void translateInstruction(int index, Instruction instruction) {
+        if (mayDivideByZero(instruction) || (instruction.thenInstruction != null
+                && mayDivideByZero(instruction.thenInstruction))) {
+            // let the parser know which line fails if the division by zero happens
+            loadParser();
+            code.pushInt(instruction.lineNumber);
+            invokeParser("enterLine", "(I)V");
+        }
+        if (isBackwardJump(index, instruction)) {
+            // a loop of compiled code calls nothing else, hand the output over here when the JVM shuts down
+            loadParser();
+            invokeParser("flushOutputIfShuttingDown", "()V");
+        }
+        switch (instruction.opcode) {
+            case INTEGER -> {
+                for (int slot: instruction.variableSlots) {
+                    declareVariable(slot);
+                }
+            }
+            case INPUT -> {
+                loadParser();
+                code.pushInt(index);
+                invokeParser("readInputValues", "(I)[I");
+                code.localVariable(ClassFileWriter.Code.ASTORE, inputArrayLocal);
+                for (int i = 0; i < instruction.variableSlots.length; i++) {
+                    code.localVariable(ClassFileWriter.Code.ALOAD, inputArrayLocal);
+                    code.pushInt(i);
+                    code.instruction(ClassFileWriter.Code.IALOAD);
+                    assignVariable(instruction.variableSlots[i]);
+                }
+            }
+            case LET -> {
+                translateExpression(instruction.expression, 0);
+                assignVariable(instruction.variableSlot);
+            }
+            case PUSH -> {
+                loadParser();
+                translateExpression(instruction.expression, 1);
+                code.pushInt(instruction.lineNumber);
+                invokeParser("pushOperand", "(II)V");
+            }
+            case POP -> {
+                loadParser();
+                code.pushInt(instruction.lineNumber);
+                invokeParser("popOperand", "(I)I");
+                assignVariable(instruction.variableSlot);
+            }
+            case IF -> translateConditionalInstruction(instruction);
+            case BRANCH -> {
+                translateExpression(instruction.leftExpression, 0);
+                translateExpression(instruction.rightExpression, 1);
+                code.jump(branchOpcode(instruction.relationalOperator, false), instructionLabels[instruction.targetIndex]);
+            }
+            case GOTO -> code.jump(ClassFileWriter.Code.GOTO, instructionLabels[instruction.targetIndex]);
+            case GOSUB -> {
+                loadParser();
+                code.pushInt(index + 1);
+                code.pushInt(instruction.lineNumber);
+                invokeParser("pushReturnAddress", "(II)V");
+                code.jump(ClassFileWriter.Code.GOTO, instructionLabels[instruction.targetIndex]);
+            }
+            case PRINT, PRINTLN -> translatePrintInstruction(instruction);
+            case RET -> {
+                loadParser();
+                code.pushInt(instruction.lineNumber);
+                invokeParser("popReturnAddress", "(I)I");
+                for (int i = 0; i < returnAddresses.length; i++) {
+                    returnLabels[i] = instructionLabels[returnAddresses[i]];
+                }
+                code.lookupSwitch(returnAddresses, returnLabels, instructionLabels[instructions.length]);
+            }
+            case END -> code.jump(ClassFileWriter.Code.GOTO, instructionLabels[instructions.length]);
+            case INVALID -> {
+                // rare error paths are left to the interpreter
+                loadParser();
+                code.pushInt(index);
+                invokeParser("executeInstructionAt", "(I)V");
+            }
+        }
+    }
+
+    private static boolean isBackwardJump(int index, Instruction instruction) {
+        Instruction jump = instruction.opcode == Opcode.IF && instruction.thenInstruction != null
+                ? instruction.thenInstruction : instruction;
+        return (jump.opcode == Opcode.GOTO || jump.opcode == Opcode.BRANCH) && jump.targetIndex <= index;
+    }
+
+    private void translateConditionalInstruction(Instruction instruction) {
+        translateExpression(instruction.leftExpression, 0);
+        translateExpression(instruction.rightExpression, 1);
+        Instruction thenInstruction = instruction.thenInstruction;
+        if (thenInstruction == null) {
+            // the condition has no effect
+            code.instruction(ClassFileWriter.Code.POP2);
+            return;
+        }
+        if (thenInstruction.opcode == Opcode.GOTO) {
+            code.jump(branchOpcode(instruction.relationalOperator, false), instructionLabels[thenInstruction.targetIndex]);
+            return;
+        }
+        int skipLabel = code.newLabel();
+        code.jump(branchOpcode(instruction.relationalOperator, true), skipLabel);
+        translatePrintInstruction(thenInstruction);
+        code.placeLabel(skipLabel);
+    }
+
+    /**
+     * @param relationalOperator the SIL relational operator
+     * @param isNegated whether the branch is taken when the condition does not hold
+     * @return the matching if_icmp opcode
+     */
+    private static int branchOpcode(char relationalOperator, boolean isNegated) {
+        return switch (relationalOperator) {
+            case '<' -> isNegated ? ClassFileWriter.Code.IF_ICMPGE : ClassFileWriter.Code.IF_ICMPLT;
+            case '>' -> isNegated ? ClassFileWriter.Code.IF_ICMPLE : ClassFileWriter.Code.IF_ICMPGT;
+            case '=' -> isNegated ? ClassFileWriter.Code.IF_ICMPNE : ClassFileWriter.Code.IF_ICMPEQ;
+            default -> isNegated ? ClassFileWriter.Code.IF_ICMPEQ : ClassFileWriter.Code.IF_ICMPNE;
+        };
+    }
+
+    private void translatePrintInstruction(Instruction instruction) {
+        loadParser();
+        if (instruction.text != null) {
+            code.pushString(instruction.text);
+            code.pushInt(instruction.opcode == Opcode.PRINTLN ? 1 : 0);
+            invokeParser("printText", "(Ljava/lang/String;Z)V");
+        } else {
+            translateExpression(instruction.expression, 1);
+            code.pushInt(instruction.opcode == Opcode.PRINTLN ? 1 : 0);
+            invokeParser("printValue", "(IZ)V");
+        }
+    }
+
+    /**
+     * Emits code that leaves the value of the expression on the operand stack
+     * @param expression the compiled expression
+     * @param stackDepth number of values already on the operand stack
+     */
+    private void translateExpression(Expression expression, int stackDepth) {
+        maxStack = Math.max(maxStack, stackDepth + 3);
+        if (expression instanceof Expression.Constant constant) {
+            code.pushInt(constant.value);
+        } else if (expression instanceof Expression.VariableRead variableRead) {
+            code.localVariable(ClassFileWriter.Code.ILOAD, FIRST_VARIABLE_LOCAL + variableRead.slot);
+        } else if (expression instanceof Expression.Negation negation) {
+            translateExpression(negation.operand, stackDepth);
+            code.instruction(ClassFileWriter.Code.INEG);
+        } else if (expression instanceof Expression.BinaryOperation operation) {
+            translateExpression(operation.left, stackDepth);
+            translateExpression(operation.right, stackDepth + 1);
+            switch (operation.operator) {
+                case '+' -> code.instruction(ClassFileWriter.Code.IADD);
+                case '-' -> code.instruction(ClassFileWriter.Code.ISUB);
+                case '*' -> code.instruction(ClassFileWriter.Code.IMUL);
+                default -> {
+                    if (operation.right instanceof Expression.Constant divisor && divisor.value != 0)
+                        code.instruction(ClassFileWriter.Code.IDIV);
+                    else
+                        code.invoke(ClassFileWriter.Code.INVOKESTATIC, "Expression", "divide", "(II)I");
+                }
+            }
+        } else {
+            throw new IllegalStateException("Unknown expression "+expression);
+        }
+    }
+
+    private static boolean mayDivideByZero(Instruction instruction) {
+        return mayDivideByZero(instruction.expression) || mayDivideByZero(instruction.leftExpression)
+                || mayDivideByZero(instruction.rightExpression);
+    }
+
+    private static boolean mayDivideByZero(Expression expression) {
+        if (expression instanceof Expression.Negation negation)
+            return mayDivideByZero(negation.operand);
+        if (expression instanceof Expression.BinaryOperation operation) {
+            if (operation.operator == '/' && !(operation.right instanceof Expression.Constant divisor && divisor.value != 0))
+                return true;
+            return mayDivideByZero(operation.left) || mayDivideByZero(operation.right);
+        }
+        return false;
+    }
+
+    private void declareVariable(int slot) {
+        code.pushInt(VariableStore.UNINITIALIZED_VALUE);
+        code.localVariable(ClassFileWriter.Code.ISTORE, FIRST_VARIABLE_LOCAL + slot);
+        code.pushInt(0);
+        code.localVariable(ClassFileWriter.Code.ISTORE, firstInitializedFlagLocal + slot);
+    }
+
+    /**
+     * Stores the value on top of the operand stack into the variable and marks the variable initialized
+     */
+    private void assignVariable(int slot) {
+        code.localVariable(ClassFileWriter.Code.ISTORE, FIRST_VARIABLE_LOCAL + slot);
+        code.pushInt(1);
+        code.localVariable(ClassFileWriter.Code.ISTORE, firstInitializedFlagLocal + slot);
+    }
+
+    /**
+     * Copies the variables back into the parser, so that they end in the same declared / initialized state
+     * as when the program is interpreted
+     */
+    private void writeVariablesBack() {
+        for (int slot = 0; slot < variableCount; slot++) {
+            loadParser();
+            code.pushInt(slot);
+            code.localVariable(ClassFileWriter.Code.ILOAD, FIRST_VARIABLE_LOCAL + slot);
+            code.localVariable(ClassFileWriter.Code.ILOAD, firstInitializedFlagLocal + slot);
+            invokeParser("storeVariable", "(IIZ)V");
+        }
+    }
+
+    private void loadParser() {
+        code.localVariable(ClassFileWriter.Code.ALOAD, PARSER_LOCAL);
+    }
+
+    private void invokeParser(String name, String descriptor) {
+        code.invoke(ClassFileWriter.Code.INVOKEVIRTUAL, PARSER, name, descriptor);
+    }
+}
@@ -0,0 +1,186 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Snapshot of a running program: program counter, variables with their declared / initialized state,
+ * operand stack, subroutine stack and pending output. Restoring a checkpoint continues the program at the
+ * instruction it would have executed next, without running it again from its first line.
+ * A checkpoint belongs to one program, recognised by the SHA-256 hash of its source, whether it was
+ * optimized and its number of instructions, as the program counter and return addresses are instruction indices.
+ *
+ * Layout: magic, format version, payload length, payload CRC32, payload.
+ */
+public final class Checkpoint {
+
+    private static final int MAGIC = 0x53494C53; // "SILS"
+    // increase whenever the layout of the payload changes
+    private static final int FORMAT_VERSION = 1;
+    private static final int HASH_LENGTH = 32;
+    private static final int HEADER_LENGTH = 4 + 4 + 4 + 4;
+
+    final byte[] programHash;
+    final boolean isOptimized;
+    final int instructionCount;
+    final int programCounter;
+    final long executedCount;
+    final int[] values;
+    final long[] declared;
+    final long[] initialized;
+    final int[] operandStack;
+    final int[] subroutineStack;
+    final byte[] pendingOutput;
+
+    Checkpoint(byte[] programHash, boolean isOptimized, int instructionCount, int programCounter,
+               long executedCount, int[] values, long[] declared, long[] initialized, int[] operandStack,
+               int[] subroutineStack, byte[] pendingOutput) {
+        this.programHash = programHash;
+        this.isOptimized = isOptimized;
+        this.instructionCount = instructionCount;
+        this.programCounter = programCounter;
+        this.executedCount = executedCount;
+        this.values = values;
+        this.declared = declared;
+        this.initialized = initialized;
+        this.operandStack = operandStack;
+        this.subroutineStack = subroutineStack;
+        this.pendingOutput = pendingOutput;
+    }
+
+    /**
+     * @return true when the checkpoint was taken from the given program
+     */
+    boolean belongsTo(byte[] programHash, boolean isOptimized, SILFile silFile) {
+        return Arrays.equals(this.programHash, programHash) && this.isOptimized == isOptimized
+                && instructionCount == silFile.getInstructions().length
+                && values.length == silFile.getVariableTable().size()
+                && declared.length == (values.length + 63) >>> 6 && initialized.length == declared.length
+                && programCounter >= 0 && programCounter < instructionCount;
+    }
+
+    /**
+     * Reads a checkpoint file
+     * @param file the checkpoint file
+     * @return the checkpoint
+     * @throws IOException when the file cannot be read, was written by another format version or is corrupt
+     */
+    public static Checkpoint read(File file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        try {
+            if (buffer.remaining() < HEADER_LENGTH || buffer.getInt() != MAGIC
+                    || buffer.getInt() != FORMAT_VERSION)
+                throw new IOException("Not a checkpoint of this version");
+            int payloadLength = buffer.getInt();
+            int checksum = buffer.getInt();
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate());
+            if (payloadLength != buffer.remaining() || (int) crc.getValue() != checksum)
+                throw new IOException("Corrupt checkpoint");
+            byte[] programHash = new byte[HASH_LENGTH];
+            buffer.get(programHash);
+            boolean isOptimized = buffer.get() != 0;
+            int instructionCount = buffer.getInt();
+            int programCounter = buffer.getInt();
+            long executedCount = buffer.getLong();
+            int[] values = readInts(buffer);
+            long[] declared = readLongs(buffer);
+            long[] initialized = readLongs(buffer);
+            int[] operandStack = readInts(buffer);
+            int[] subroutineStack = readInts(buffer);
+            byte[] pendingOutput = new byte[buffer.getInt()];
+            buffer.get(pendingOutput);
+            return new Checkpoint(programHash, isOptimized, instructionCount, programCounter, executedCount,
+                    values, declared, initialized, operandStack, subroutineStack, pendingOutput);
+        } catch (BufferUnderflowException | NegativeArraySizeException e) {
+            throw new IOException("Corrupt checkpoint");
+        }
+    }
+
+    /**
+     * Writes the checkpoint through a temporary file, so that a crash while writing leaves the previous
+     * checkpoint intact
+     * @param file the checkpoint file, replaced when it exists
+     */
+    public void write(File file) throws IOException {
+        ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream();
+        DataOutputStream payload = new DataOutputStream(payloadBytes);
+        payload.write(programHash);
+        payload.writeBoolean(isOptimized);
+        payload.writeInt(instructionCount);
+        payload.writeInt(programCounter);
+        payload.writeLong(executedCount);
+        writeInts(payload, values);
+        writeLongs(payload, declared);
+        writeLongs(payload, initialized);
+        writeInts(payload, operandStack);
+        writeInts(payload, subroutineStack);
+        payload.writeInt(pendingOutput.length);
+        payload.write(pendingOutput);
+        payload.flush();
+        byte[] payloadArray = payloadBytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payloadArray);
+
+        ByteArrayOutputStream fileBytes = new ByteArrayOutputStream(HEADER_LENGTH + payloadArray.length);
+        DataOutputStream out = new DataOutputStream(fileBytes);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(payloadArray.length);
+        out.writeInt((int) crc.getValue());
+        out.write(payloadArray);
+        out.flush();
+
+        Path directory = file.getAbsoluteFile().toPath().getParent();
+        Path temporaryFile = Files.createTempFile(directory, file.getName(), ".tmp");
+        try {
+            Files.write(temporaryFile, fileBytes.toByteArray());
+            Files.move(temporaryFile, file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    /**
+     * @return the number of instructions the program had executed when the checkpoint was taken
+     */
+    public long getExecutedCount() {
+        return executedCount;
+    }
+
+    private static int[] readInts(ByteBuffer buffer) {
+        int[] array = new int[buffer.getInt()];
+        buffer.asIntBuffer().get(array);
+        buffer.position(buffer.position() + array.length * Integer.BYTES);
+        return array;
+    }
+
+    private static long[] readLongs(ByteBuffer buffer) {
+        long[] array = new long[buffer.getInt()];
+        buffer.asLongBuffer().get(array);
+        buffer.position(buffer.position() + array.length * Long.BYTES);
+        return array;
+    }
+
+    private static void writeInts(DataOutputStream out, int[] array) throws IOException {
+        out.writeInt(array.length);
+        for (int value: array) {
+            out.writeInt(value);
+        }
+    }
+
+    private static void writeLongs(DataOutputStream out, long[] array) throws IOException {
+        out.writeInt(array.length);
+        for (long value: array) {
+            out.writeLong(value);
+        }
+    }
+}
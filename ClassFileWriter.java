@@ -0,0 +1,369 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Minimal writer for JVM class files, just enough for the {@link BytecodeCompiler}.
+ * Classes are written with class file version 49 so that no StackMapTable has to be computed;
+ * the JVM verifies them with the type inferencing verifier instead.
+ */
+public class ClassFileWriter {
+
+    private static final int CLASS_FILE_MAGIC = 0xCAFEBABE;
+    private static final int CLASS_FILE_MAJOR_VERSION = 49;
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private final ByteArrayOutputStream constantPoolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream constantPool = new DataOutputStream(constantPoolBytes);
+    private final HashMap<String, Integer> constantIndices = new HashMap<>();
+    private int constantCount = 1;
+
+    private final int thisClass;
+    private final int superClass;
+    private final List<Integer> interfaces = new ArrayList<>();
+    private final List<byte[]> methods = new ArrayList<>();
+
+    /**
+     * @param className internal name of the class being written, e.g. "SILProgram"
+     * @param superClassName internal name of the super class, e.g. "java/lang/Object"
+     */
+    public ClassFileWriter(String className, String superClassName) {
+        thisClass = classConstant(className);
+        superClass = classConstant(superClassName);
+    }
+
+    public void addInterface(String interfaceName) {
+        interfaces.add(classConstant(interfaceName));
+    }
+
+    /**
+     * Adds a public method
+     * @param name method name
+     * @param descriptor method descriptor, e.g. "(LFileParser;)V"
+     * @param code the method body
+     */
+    public void addMethod(String name, String descriptor, Code code) {
+        try {
+            ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+            DataOutputStream method = new DataOutputStream(methodBytes);
+            byte[] bytecode = code.toByteArray();
+            method.writeShort(ACC_PUBLIC);
+            method.writeShort(utf8Constant(name));
+            method.writeShort(utf8Constant(descriptor));
+            method.writeShort(1);
+            method.writeShort(utf8Constant("Code"));
+            method.writeInt(12 + bytecode.length + 8 * code.exceptionHandlers.size());
+            method.writeShort(code.maxStack);
+            method.writeShort(code.maxLocals);
+            method.writeInt(bytecode.length);
+            method.write(bytecode);
+            method.writeShort(code.exceptionHandlers.size());
+            for (int[] handler: code.exceptionHandlers) {
+                method.writeShort(code.labelPositions.get(handler[0]));
+                method.writeShort(code.labelPositions.get(handler[1]));
+                method.writeShort(code.labelPositions.get(handler[2]));
+                method.writeShort(0);
+            }
+            method.writeShort(0);
+            methods.add(methodBytes.toByteArray());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public byte[] toByteArray() {
+        try {
+            ByteArrayOutputStream classBytes = new ByteArrayOutputStream();
+            DataOutputStream classFile = new DataOutputStream(classBytes);
+            classFile.writeInt(CLASS_FILE_MAGIC);
+            classFile.writeShort(0);
+            classFile.writeShort(CLASS_FILE_MAJOR_VERSION);
+            classFile.writeShort(constantCount);
+            classFile.write(constantPoolBytes.toByteArray());
+            classFile.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            classFile.writeShort(thisClass);
+            classFile.writeShort(superClass);
+            classFile.writeShort(interfaces.size());
+            for (int anInterface: interfaces) {
+                classFile.writeShort(anInterface);
+            }
+            classFile.writeShort(0);
+            classFile.writeShort(methods.size());
+            for (byte[] method: methods) {
+                classFile.write(method);
+            }
+            classFile.writeShort(0);
+            return classBytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public int utf8Constant(String value) {
+        Integer index = constantIndices.get("U" + value);
+        if (index != null)
+            return index;
+        try {
+            constantPool.writeByte(1);
+            constantPool.writeUTF(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return newConstant("U" + value, 1);
+    }
+
+    public int integerConstant(int value) {
+        Integer index = constantIndices.get("I" + value);
+        if (index != null)
+            return index;
+        writeConstant(3, value);
+        return newConstant("I" + value, 1);
+    }
+
+    public int stringConstant(String value) {
+        Integer index = constantIndices.get("S" + value);
+        if (index != null)
+            return index;
+        writeConstant(8, utf8Constant(value));
+        return newConstant("S" + value, 1);
+    }
+
+    public int classConstant(String internalName) {
+        Integer index = constantIndices.get("C" + internalName);
+        if (index != null)
+            return index;
+        writeConstant(7, utf8Constant(internalName));
+        return newConstant("C" + internalName, 1);
+    }
+
+    public int methodConstant(String owner, String name, String descriptor, boolean isInterface) {
+        String key = (isInterface ? "J" : "M") + owner + "." + name + descriptor;
+        Integer index = constantIndices.get(key);
+        if (index != null)
+            return index;
+        int ownerIndex = classConstant(owner);
+        int nameAndTypeIndex = nameAndTypeConstant(name, descriptor);
+        try {
+            constantPool.writeByte(isInterface ? 11 : 10);
+            constantPool.writeShort(ownerIndex);
+            constantPool.writeShort(nameAndTypeIndex);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return newConstant(key, 1);
+    }
+
+    private int nameAndTypeConstant(String name, String descriptor) {
+        String key = "N" + name + ":" + descriptor;
+        Integer index = constantIndices.get(key);
+        if (index != null)
+            return index;
+        int nameIndex = utf8Constant(name);
+        int descriptorIndex = utf8Constant(descriptor);
+        try {
+            constantPool.writeByte(12);
+            constantPool.writeShort(nameIndex);
+            constantPool.writeShort(descriptorIndex);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return newConstant(key, 1);
+    }
+
+    private void writeConstant(int tag, int value) {
+        try {
+            constantPool.writeByte(tag);
+            if (tag == 3)
+                constantPool.writeInt(value);
+            else
+                constantPool.writeShort(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private int newConstant(String key, int size) {
+        if (constantCount + size > 0xFFFF)
+            throw new IllegalStateException("Constant pool too large");
+        int index = constantCount;
+        constantIndices.put(key, index);
+        constantCount += size;
+        return index;
+    }
+
+    /**
+     * Bytecode of a single method body with support for labels and forward branches
+     */
+    public static class Code {
+
+        public static final int ILOAD = 0x15, ISTORE = 0x36, ALOAD = 0x19, ASTORE = 0x3a;
+        public static final int IADD = 0x60, ISUB = 0x64, IMUL = 0x68, IDIV = 0x6c, INEG = 0x74;
+        public static final int IALOAD = 0x2e, POP2 = 0x58, RETURN = 0xb1, ATHROW = 0xbf;
+        public static final int IF_ICMPEQ = 0x9f, IF_ICMPNE = 0xa0, IF_ICMPLT = 0xa1,
+                IF_ICMPGE = 0xa2, IF_ICMPGT = 0xa3, IF_ICMPLE = 0xa4, GOTO = 0xa7;
+        public static final int INVOKEVIRTUAL = 0xb6, INVOKESPECIAL = 0xb7, INVOKESTATIC = 0xb8;
+
+        private static final int BIPUSH = 0x10, SIPUSH = 0x11, LDC = 0x12, LDC_W = 0x13;
+        private static final int ICONST_0 = 0x03, LOOKUPSWITCH = 0xab, WIDE = 0xc4;
+
+        private final ClassFileWriter classFile;
+        private byte[] bytes = new byte[256];
+        private int length;
+        private final List<Integer> labelPositions = new ArrayList<>();
+        // each fixup: position of the offset, position of the branching instruction, label, offset width in bytes
+        private final List<int[]> fixups = new ArrayList<>();
+        private final List<int[]> exceptionHandlers = new ArrayList<>();
+        int maxStack;
+        int maxLocals;
+
+        public Code(ClassFileWriter classFile) {
+            this.classFile = classFile;
+        }
+
+        public int newLabel() {
+            labelPositions.add(-1);
+            return labelPositions.size() - 1;
+        }
+
+        public void placeLabel(int label) {
+            labelPositions.set(label, length);
+        }
+
+        public int length() {
+            return length;
+        }
+
+        public void setMaxs(int maxStack, int maxLocals) {
+            this.maxStack = maxStack;
+            this.maxLocals = maxLocals;
+        }
+
+        /**
+         * Registers a catch-all exception handler for the code between two labels
+         */
+        public void addExceptionHandler(int startLabel, int endLabel, int handlerLabel) {
+            exceptionHandlers.add(new int[]{startLabel, endLabel, handlerLabel});
+        }
+
+        public void instruction(int opcode) {
+            writeByte(opcode);
+        }
+
+        public void localVariable(int opcode, int local) {
+            if (local > 0xFF) {
+                writeByte(WIDE);
+                writeByte(opcode);
+                writeShort(local);
+            } else {
+                writeByte(opcode);
+                writeByte(local);
+            }
+        }
+
+        public void pushInt(int value) {
+            if (value >= -1 && value <= 5) {
+                writeByte(ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                writeByte(BIPUSH);
+                writeByte(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                writeByte(SIPUSH);
+                writeShort(value);
+            } else {
+                loadConstant(classFile.integerConstant(value));
+            }
+        }
+
+        public void pushString(String value) {
+            loadConstant(classFile.stringConstant(value));
+        }
+
+        public void invoke(int opcode, String owner, String name, String descriptor) {
+            writeByte(opcode);
+            writeShort(classFile.methodConstant(owner, name, descriptor, false));
+        }
+
+        public void jump(int opcode, int label) {
+            int instructionPosition = length;
+            writeByte(opcode);
+            fixups.add(new int[]{length, instructionPosition, label, 2});
+            writeShort(0);
+        }
+
+        /**
+         * Writes a lookupswitch
+         * @param keys the switch keys in ascending order
+         * @param labels the label jumped to for each key
+         * @param defaultLabel the label jumped to when no key matches
+         */
+        public void lookupSwitch(int[] keys, int[] labels, int defaultLabel) {
+            int instructionPosition = length;
+            writeByte(LOOKUPSWITCH);
+            while (length % 4 != 0)
+                writeByte(0);
+            fixups.add(new int[]{length, instructionPosition, defaultLabel, 4});
+            writeInt(0);
+            writeInt(keys.length);
+            for (int i = 0; i < keys.length; i++) {
+                writeInt(keys[i]);
+                fixups.add(new int[]{length, instructionPosition, labels[i], 4});
+                writeInt(0);
+            }
+        }
+
+        byte[] toByteArray() {
+            for (int[] fixup: fixups) {
+                int target = labelPositions.get(fixup[2]);
+                if (target < 0)
+                    throw new IllegalStateException("Label never placed");
+                int offset = target - fixup[1];
+                if (fixup[3] == 2) {
+                    if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE)
+                        throw new IllegalStateException("Branch offset out of range");
+                    bytes[fixup[0]] = (byte) (offset >> 8);
+                    bytes[fixup[0] + 1] = (byte) offset;
+                } else {
+                    bytes[fixup[0]] = (byte) (offset >> 24);
+                    bytes[fixup[0] + 1] = (byte) (offset >> 16);
+                    bytes[fixup[0] + 2] = (byte) (offset >> 8);
+                    bytes[fixup[0] + 3] = (byte) offset;
+                }
+            }
+            if (length > 0xFFFF)
+                throw new IllegalStateException("Method too large");
+            return Arrays.copyOf(bytes, length);
+        }
+
+        private void loadConstant(int index) {
+            if (index <= 0xFF) {
+                writeByte(LDC);
+                writeByte(index);
+            } else {
+                writeByte(LDC_W);
+                writeShort(index);
+            }
+        }
+
+        private void writeByte(int value) {
+            if (length == bytes.length)
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            bytes[length++] = (byte) value;
+        }
+
+        private void writeShort(int value) {
+            writeByte(value >> 8);
+            writeByte(value);
+        }
+
+        private void writeInt(int value) {
+            writeShort(value >> 16);
+            writeShort(value);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+/**
+ * A SIL program translated to JVM bytecode by the {@link BytecodeCompiler}.
+ */
+public interface CompiledProgram {
+
+    /**
+     * Runs the program from its first instruction
+     * @param parser supplies the stacks, input and output used by the program
+     */
+    void run(FileParser parser);
+}
@@ -0,0 +1,84 @@
+import java.io.PrintStream;
+
+/**
+ * Ring buffer holding the last executed instructions of one interpreted program, printed when the program
+ * stops because of an error. The buffer is allocated once; recording an instruction stores its index and one
+ * operand value in primitive arrays, so tracing can stay enabled in production. Instructions are only turned
+ * into text when the trace is printed.
+ *
+ * The operand is the value assigned by LET and POP, the first value read by INPUT, the value pushed by PUSH
+ * and the line executed next after IF, GOTO, GOSUB and RET.
+ */
+public class ExecutionTrace {
+
+    // most instructions a trace keeps, two ints each
+    public static final int MAX_CAPACITY = 1 << 24;
+
+    private final SILFile silFile;
+    // a power of two, so that positions wrap with a mask
+    private final int capacity;
+    // instruction index and operand of every entry, interleaved so that recording touches one cache line
+    private final int[] entries;
+    // number of instructions recorded since the program started
+    private long recordedCount;
+
+    /**
+     * @param silFile the loaded program being traced
+     * @param capacity number of instructions kept, rounded up to a power of two
+     * @throws IllegalArgumentException when the capacity is not from 1 to {@link #MAX_CAPACITY}
+     */
+    public ExecutionTrace(SILFile silFile, int capacity) {
+        if (capacity <= 0 || capacity > MAX_CAPACITY)
+            throw new IllegalArgumentException("Trace capacity must be from 1 to "+MAX_CAPACITY+", got "+capacity);
+        this.silFile = silFile;
+        this.capacity = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        entries = new int[this.capacity * 2];
+    }
+
+    /**
+     * Records an instruction before it is executed
+     * @param index index of the instruction
+     * @return the position of the entry, to be passed to {@link #setOperand(int, int)} once the instruction ran
+     */
+    int record(int index) {
+        int position = ((int) recordedCount++ & (capacity - 1)) << 1;
+        entries[position] = index;
+        return position;
+    }
+
+    void setOperand(int position, int operand) {
+        entries[position + 1] = operand;
+    }
+
+    public long getRecordedCount() {
+        return recordedCount;
+    }
+
+    /**
+     * Prints the recorded instructions, oldest first. The last one is the instruction that was executing
+     * when the program stopped.
+     * @param out the stream to print to
+     */
+    public void print(PrintStream out) {
+        Instruction[] instructions = silFile.getInstructions();
+        int count = (int) Math.min(recordedCount, capacity);
+        out.printf("Last %d of %d instructions executed:%n", count, recordedCount);
+        for (long entry = recordedCount - count; entry < recordedCount; entry++) {
+            int position = ((int) entry & (capacity - 1)) << 1;
+            Instruction instruction = instructions[entries[position]];
+            boolean isLast = entry == recordedCount - 1;
+            String operand = isLast ? "  <- stopped here"
+                    : describeOperand(instruction, entries[position + 1], instructions);
+            out.printf(operand.isEmpty() ? "%12d  %s%n" : "%12d  %-40s%s%n", entry + 1, instruction, operand);
+        }
+    }
+
+    private static String describeOperand(Instruction instruction, int operand, Instruction[] instructions) {
+        return switch (instruction.opcode) {
+            case LET, POP, INPUT, PUSH -> "  = " + operand;
+            case IF, BRANCH, GOTO, GOSUB, RET -> "  -> " + (operand < instructions.length
+                    ? "line " + instructions[operand].lineNumber : "end");
+            default -> "";
+        };
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * A compiled arithmetic expression.
+ * Expressions are compiled once at load time into a tree whose variable nodes refer to variable slots,
+ * so evaluating an expression neither parses text nor allocates.
+ */
+public abstract class Expression {
+
+    /**
+     * @param variables the variables of the running program
+     * @return the value of the expression
+     */
+    public abstract int evaluate(VariableStore variables);
+
+    public boolean isConstant() {
+        return false;
+    }
+
+    public static int applyOperator(char operator, int leftOperand, int rightOperand) {
+        switch (operator) {
+            case '+':
+                return leftOperand + rightOperand;
+            case '-':
+                return leftOperand - rightOperand;
+            case '*':
+                return leftOperand * rightOperand;
+            case '/':
+                return divide(leftOperand, rightOperand);
+        }
+        return 0;
+    }
+
+    public static int divide(int dividend, int divisor) {
+        if (divisor == 0)
+            throw new SILRuntimeException("Cannot divide by zero");
+        return dividend / divisor;
+    }
+
+    static final class Constant extends Expression {
+        final int value;
+
+        Constant(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public int evaluate(VariableStore variables) {
+            return value;
+        }
+
+        @Override
+        public boolean isConstant() {
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return Integer.toString(value);
+        }
+    }
+
+    static final class VariableRead extends Expression {
+        final int slot;
+        final String name;
+
+        VariableRead(int slot, String name) {
+            this.slot = slot;
+            this.name = name;
+        }
+
+        // the ProgramVerifier made sure that the variable is declared before it is read
+        @Override
+        public int evaluate(VariableStore variables) {
+            return variables.values[slot];
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    static final class Negation extends Expression {
+        final Expression operand;
+
+        Negation(Expression operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        public int evaluate(VariableStore variables) {
+            return -operand.evaluate(variables);
+        }
+
+        @Override
+        public String toString() {
+            return "-" + parenthesized(operand);
+        }
+    }
+
+    static final class BinaryOperation extends Expression {
+        final char operator;
+        final Expression left;
+        final Expression right;
+
+        BinaryOperation(char operator, Expression left, Expression right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public int evaluate(VariableStore variables) {
+            return applyOperator(operator, left.evaluate(variables), right.evaluate(variables));
+        }
+
+        @Override
+        public String toString() {
+            return parenthesized(left) + " " + operator + " " + parenthesized(right);
+        }
+    }
+
+    private static String parenthesized(Expression expression) {
+        return expression instanceof BinaryOperation ? "(" + expression + ")" : expression.toString();
+    }
+}
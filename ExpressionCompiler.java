@@ -0,0 +1,90 @@
+/**
+ * Recursive descent compiler that turns the tokens of an expression into an {@link Expression} tree.
+ * Supports integer literals, variables, + - * /, unary minus and parentheses.
+ * Operations whose operands are both constant are folded while compiling.
+ */
+public class ExpressionCompiler {
+
+    private final VariableTable variableTable;
+    private SILLexer lexer;
+    private int position;
+    private int end;
+
+    public ExpressionCompiler(VariableTable variableTable) {
+        this.variableTable = variableTable;
+    }
+
+    /**
+     * @param lexer holds the tokens of the current line
+     * @param start index of the first token of the expression
+     * @param end index after the last token of the expression
+     * @return the compiled expression, or null when the tokens are not a valid expression
+     */
+    public Expression compile(SILLexer lexer, int start, int end) {
+        this.lexer = lexer;
+        this.position = start;
+        this.end = end;
+        try {
+            Expression expression = parseSum();
+            return position == end ? expression : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private Expression parseSum() {
+        Expression expression = parseProduct();
+        while (position < end && (isOperator('+') || isOperator('-'))) {
+            char operator = (char) lexer.getValue(position++);
+            expression = fold(operator, expression, parseProduct());
+        }
+        return expression;
+    }
+
+    private Expression parseProduct() {
+        Expression expression = parseFactor();
+        while (position < end && (isOperator('*') || isOperator('/'))) {
+            char operator = (char) lexer.getValue(position++);
+            expression = fold(operator, expression, parseFactor());
+        }
+        return expression;
+    }
+
+    private Expression parseFactor() {
+        if (position >= end)
+            throw new IllegalArgumentException("Unexpected end of expression");
+        if (isOperator('-')) {
+            position++;
+            Expression operand = parseFactor();
+            return operand.isConstant() ? new Expression.Constant(-operand.evaluate(null)) : new Expression.Negation(operand);
+        }
+        if (isOperator('(')) {
+            position++;
+            Expression expression = parseSum();
+            if (position >= end || !isOperator(')'))
+                throw new IllegalArgumentException("Missing closing parenthesis");
+            position++;
+            return expression;
+        }
+        int token = position++;
+        return switch (lexer.getType(token)) {
+            case INTEGER_LITERAL -> new Expression.Constant(lexer.getValue(token));
+            case IDENTIFIER -> {
+                int slot = variableTable.slotOf(lexer.getSource(), lexer.getStart(token), lexer.getEnd(token));
+                yield new Expression.VariableRead(slot, variableTable.nameOf(slot));
+            }
+            default -> throw new IllegalArgumentException("Invalid operand");
+        };
+    }
+
+    private Expression fold(char operator, Expression left, Expression right) {
+        // division by a constant zero is left for run time so that it is reported only if it is executed
+        if (left.isConstant() && right.isConstant() && !(operator == '/' && right.evaluate(null) == 0))
+            return new Expression.Constant(Expression.applyOperator(operator, left.evaluate(null), right.evaluate(null)));
+        return new Expression.BinaryOperation(operator, left, right);
+    }
+
+    private boolean isOperator(char operator) {
+        return lexer.isOperator(position, operator);
+    }
+}
@@ -1,411 +1,842 @@
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.util.*;
+import java.util.ArrayList;
+import java.util.List;
 
 public class FileParser {
 
-    private final Scanner consoleInputReader;
+    // Source of the values read by INPUT, standard input unless set with setInput
+    private InputSource input;
     private SILFile silFile;
 
-    // Used to retrieve line number for execution after control is returned from a sub routine
-    private final Stack<Integer> subRoutineStack = new Stack<>();
+    // Index of the next instruction to be executed
+    private int programCounter;
+    // Cleared by END to stop the dispatch loop
+    private boolean isRunning;
+    // Exit status of a program run in slices with step, see start
+    private int stepExitStatus;
+
+    // Default maximum depth of the operand stack and of the subroutine stack
+    public static final int DEFAULT_MAX_STACK_DEPTH = 1 << 20;
+
+    // Exit status of a program, returned by parse
+    public static final int EXIT_SUCCESS = 0;
+    public static final int EXIT_RUNTIME_ERROR = 1;
+    public static final int EXIT_LOAD_ERROR = 2;
+    public static final int EXIT_BUDGET_EXCEEDED = 3;
+
+    // Used to retrieve the instruction index for execution after control is returned from a sub routine
+    private final IntStack subRoutineStack;
     // Simple integer stack to perform PUSH & POP integer operations to be supported by SIL Parser
-    private final Stack<Integer> operationalStack = new Stack<>();
+    private final IntStack operationalStack;
+
+    // variables of the running program indexed by their slot in the SILFile variable table
+    private VariableStore variables;
+
+    // Destination of everything the program prints, standard output unless set with setOutput
+    private OutputSink output;
+
+    // Set when the program should be translated to JVM bytecode instead of being interpreted
+    private boolean isBytecodeBackendEnabled;
+    // Why programs were interpreted although the bytecode backend is enabled
+    private final List<String> compilerWarnings = new ArrayList<>();
+    // Line reported when a compiled program fails, compiled code does not have a program counter
+    private int compiledLineUnderExecution;
+    // Loaded programs are kept here so that unchanged sources are not decoded again, null when disabled
+    private ProgramCache programCache;
+
+    // Set when executions should be recorded by a Profiler, see enableProfiling
+    private boolean isProfilingEnabled;
+    private int profileSampleInterval;
+    private Profiler profiler;
+
+    // Set when the last executed instructions should be printed when a program fails, see enableTracing
+    private int traceCapacity;
+    private ExecutionTrace trace;
+
+    // Set when loaded programs are rewritten by the ProgramOptimizer before they run
+    private boolean isOptimizerEnabled;
+    // Set when the optimized program should be listed on standard error
+    private boolean isOptimizerDumpEnabled;
+
+    // Checkpoints are written to this file when set, see enableCheckpoints
+    private File checkpointFile;
+    // instructions between two checkpoints, 0 to write checkpoints only on request
+    private long checkpointInterval;
+    // checkpoint the next program continues from instead of starting at its first line, see resumeFrom
+    private File resumeFile;
+    // set by requestCheckpoint, possibly from another thread, cleared once the checkpoint is written
+    private volatile boolean isCheckpointRequested;
+    // set by the shutdown hook, the program stops once the checkpoint it asked for is written
+    private volatile boolean isShutdownRequested;
+    // number of checkpoints written, waited on by the shutdown hook
+    private int checkpointCount;
+    // identifies the program a checkpoint belongs to, the SHA-256 hash of its source
+    private byte[] programHash;
+    // instructions executed by a program run in slices, including those executed before it was resumed
+    private long executedCount;
+
+    // Instructions run between two checks for a checkpoint request
+    private static final int CHECKPOINT_POLL_INTERVAL = 1 << 16;
+    // How long the shutdown hook waits for the checkpoint of a program that is interrupted
+    private static final long CHECKPOINT_SHUTDOWN_TIMEOUT_MILLIS = 2000;
+
+    public FileParser() {
+        this(DEFAULT_MAX_STACK_DEPTH);
+    }
+
+    /**
+     * @param maxStackDepth maximum depth of the operand stack and of the subroutine stack
+     */
+    public FileParser(int maxStackDepth) {
+        operationalStack = new IntStack("Operand stack", maxStackDepth);
+        subRoutineStack = new IntStack("Subroutine stack", maxStackDepth);
+    }
+
+    /**
+     * Run programs through the {@link BytecodeCompiler} when they can be compiled,
+     * programs that cannot be compiled are still interpreted
+     */
+    public void enableBytecodeBackend() {
+        isBytecodeBackendEnabled = true;
+    }
+
+    /**
+     * @return why programs parsed so far were interpreted although the bytecode backend is enabled
+     */
+    public List<String> getCompilerWarnings() {
+        return compilerWarnings;
+    }
+
+    /**
+     * Runs every program through the {@link ProgramOptimizer} after it is loaded
+     * @param isDumpEnabled whether the optimized program is listed on standard error
+     */
+    public void enableOptimizer(boolean isDumpEnabled) {
+        isOptimizerEnabled = true;
+        isOptimizerDumpEnabled = isDumpEnabled;
+    }
+
+    /**
+     * Records an execution profile of every program parsed from now on, see {@link #getProfiler()}
+     * @param sampleInterval time one instruction out of this many, 0 to only count executions
+     */
+    public void enableProfiling(int sampleInterval) {
+        isProfilingEnabled = true;
+        profileSampleInterval = sampleInterval;
+    }
+
+    /**
+     * Keeps the last executed instructions of every program parsed from now on in a ring buffer, which is
+     * printed on standard error when the program stops because of an error. Traced programs are always interpreted.
+     * @param capacity number of instructions kept
+     */
+    public void enableTracing(int capacity) {
+        traceCapacity = capacity;
+    }
+
+    /**
+     * @return the trace of the last program parsed, null when tracing is not enabled or it did not run
+     */
+    public ExecutionTrace getTrace() {
+        return trace;
+    }
+
+    /**
+     * @return the profile of the last program parsed, null when profiling is not enabled or it did not run
+     */
+    public Profiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * Writes checkpoints of every program parsed from now on, so that a long-running program can be continued
+     * with {@link #resumeFrom(File)} after the JVM stopped. A checkpoint is written every interval instructions,
+     * when {@link #requestCheckpoint()} is called and when the JVM is shut down by a signal while the program
+     * runs. The program stops right after the shutdown checkpoint, so everything it printed before is flushed
+     * and a resumed run prints nothing twice. The checkpoint file is removed when the program ends.
+     * Checkpoints cannot be combined with the bytecode backend, profiling or tracing.
+     * @param checkpointFile file the checkpoints are written to, each checkpoint replaces the previous one
+     * @param interval instructions between two checkpoints, 0 to write checkpoints only on request
+     */
+    public void enableCheckpoints(File checkpointFile, long interval) {
+        this.checkpointFile = checkpointFile;
+        checkpointInterval = interval;
+    }
+
+    /**
+     * Continues the next program parsed from a checkpoint instead of running it from its first line
+     * @param checkpointFile a checkpoint written by a run of the same program
+     */
+    public void resumeFrom(File checkpointFile) {
+        resumeFile = checkpointFile;
+    }
+
+    /**
+     * Asks the running program to write a checkpoint before its next instructions, can be called from any thread.
+     * Has no effect unless checkpoints are enabled.
+     */
+    public void requestCheckpoint() {
+        isCheckpointRequested = true;
+    }
+
+    /**
+     * @param programCache cache that loaded programs are read from and written to, null loads from source only
+     */
+    public void setProgramCache(ProgramCache programCache) {
+        this.programCache = programCache;
+    }
+
+    /**
+     * Redirects the output of the program, e.g. to a file or to an in-memory sink when embedding the parser
+     * @param output the sink that receives everything the program prints
+     */
+    public void setOutput(OutputSink output) {
+        this.output = output;
+    }
+
+    public OutputSink getOutput() {
+        return output;
+    }
 
-    private final List<String> rawFileLines = new ArrayList<>();
-    private final List<Integer> lineNumbers = new ArrayList<>();
-    private final HashMap<String, Variable> variables = new HashMap<>();
+    /**
+     * @return the program parsed or executed last, null before the first one
+     */
+    SILFile getSILFile() {
+        return silFile;
+    }
+
+    /**
+     * @return the variables of the program executed last, null when no program ran.
+     * Compiled programs write their variables back when they stop.
+     */
+    VariableStore getVariables() {
+        return variables;
+    }
 
-    FileParser() {
-        consoleInputReader = new Scanner(System.in);
+    /**
+     * Takes INPUT values from the given source, e.g. a file or an int array to replay a run without a console
+     * @param input the source of the values read by INPUT
+     */
+    public void setInput(InputSource input) {
+        this.input = input;
     }
 
     /**
      * Main parse function
      * @param file the SIL file that needs to be parsed
+     * @return the exit status of the program, EXIT_SUCCESS when it ran to its end
      */
-    public void parse(File file) {
+    public int parse(File file) {
+        if (output == null)
+            output = OutputSink.standardOutput(OutputSink.DEFAULT_BUFFER_SIZE);
+        SILFile loadedFile;
         try  {
-            silFile = SILFile.getInstance();
-            BufferedReader bufferedReader = new BufferedReader(new FileReader(file));
-            fetchRawFileLines(bufferedReader);
-            silFile.initializeSILFileState(rawFileLines);
-            lineNumbers.addAll(silFile.getCodeLines().keySet());
-            executeInstructions(silFile.getFirstLineNumber(), silFile.getLastLineNumber());
+            if (programCache != null) {
+                loadedFile = programCache.load(file);
+            } else {
+                MappedSourceText source = MappedSourceText.map(file);
+                loadedFile = new SILFile();
+                loadedFile.initializeSILFileState(source);
+                // checkpoints recognise their program by the hash of its source
+                if (checkpointFile != null || resumeFile != null)
+                    loadedFile.setSourceHash(ProgramCache.hash(source));
+            }
         } catch (IOException e) {
-            System.out.println("Error while reading the file #file-error");
+            output.println("Error while reading the file #file-error");
+            output.flush();
+            return EXIT_LOAD_ERROR;
         }
+        if (isOptimizerEnabled && loadedFile.getLoadErrors().isEmpty()) {
+            ProgramOptimizer optimizer = ProgramOptimizer.optimize(loadedFile);
+            if (isOptimizerDumpEnabled) {
+                synchronized (System.err) {
+                    System.err.println(file.getName()+":");
+                    optimizer.dump(System.err);
+                }
+            }
+        }
+        if (checkpointFile != null || resumeFile != null)
+            return executeWithCheckpoints(loadedFile, file);
+        return execute(loadedFile, file.getName());
     }
 
     /**
-     * The function splits the whole file into lines and stores those lines as list of strings
-     * @param bufferedReader is the Buffered reader that has the file stored in it as String Buffer
+     * Runs a program in slices so that checkpoints can be written between two instructions,
+     * starting from the checkpoint given to resumeFrom when there is one.
+     * Compiled, profiled and traced programs cannot be checkpointed, they do not run in slices.
+     * @return the exit status of the program
      */
-    private void fetchRawFileLines(BufferedReader bufferedReader) {
-        String line;
+    private int executeWithCheckpoints(SILFile loadedFile, File file) {
+        if (!loadedFile.getLoadErrors().isEmpty())
+            return execute(loadedFile, file.getName());
+        if (isBytecodeBackendEnabled || isProfilingEnabled || traceCapacity > 0) {
+            output.println("Checkpoints cannot be combined with compiling, profiling or tracing #checkpoint-error");
+            output.flush();
+            return EXIT_LOAD_ERROR;
+        }
+        programHash = loadedFile.getSourceHash();
+        Checkpoint checkpoint = null;
         try {
-            while ((line = bufferedReader.readLine()) != null) {
-                rawFileLines.add(line);
-            }
+            if (resumeFile != null)
+                checkpoint = Checkpoint.read(resumeFile);
         } catch (IOException e) {
-            System.out.println("Error while reading the lines.");
+            output.println("Error while reading the checkpoint #checkpoint-error");
+            output.flush();
+            return EXIT_LOAD_ERROR;
+        }
+        if (checkpoint != null && !checkpoint.belongsTo(programHash, isOptimizerEnabled, loadedFile)) {
+            output.println("Checkpoint does not belong to this program #checkpoint-error");
+            output.flush();
+            return EXIT_LOAD_ERROR;
+        }
+        start(loadedFile);
+        executedCount = 0;
+        if (checkpoint != null) {
+            try {
+                restore(checkpoint);
+            } catch (SILRuntimeException e) {
+                // e.g. the stacks of the checkpoint are deeper than the maximum stack depth of this run
+                output.println(e.getMessage()+" while resuming the checkpoint");
+                output.flush();
+                return EXIT_RUNTIME_ERROR;
+            }
+        }
+        Thread shutdownHook = new Thread(this::writeCheckpointOnShutdown);
+        if (checkpointFile != null)
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        long sinceCheckpoint = 0;
+        while (!isFinished()) {
+            long budget = CHECKPOINT_POLL_INTERVAL;
+            if (checkpointInterval > 0)
+                budget = Math.min(budget, checkpointInterval - sinceCheckpoint);
+            int executed = step((int) budget);
+            executedCount += executed;
+            sinceCheckpoint += executed;
+            if (!isFinished() && checkpointFile != null
+                    && (isCheckpointRequested || (checkpointInterval > 0 && sinceCheckpoint >= checkpointInterval))) {
+                writeCheckpoint();
+                sinceCheckpoint = 0;
+                if (isShutdownRequested)
+                    awaitHalt();
+            }
         }
+        if (checkpointFile != null) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // the JVM is already shutting down
+            }
+            // a finished program has nothing to continue from
+            checkpointFile.delete();
+        }
+        return getExitStatus();
     }
 
     /**
-     * Execute few lines of code of a specific code snippet
-     * @param startLineNumber is the line number of first instruction to be executed
-     * @param endLineNumber is the line number of last instruction to be executed
+     * Continues a started program from a checkpoint
      */
-    private void executeInstructions(Integer startLineNumber, Integer endLineNumber) {
-        silFile.getCodeLines().keySet().forEach(lineNumber -> {
-            if (lineNumber >= startLineNumber && lineNumber <= endLineNumber)
-                examineCodeLine(lineNumber);
-        });
+    private void restore(Checkpoint checkpoint) {
+        programCounter = checkpoint.programCounter;
+        executedCount = checkpoint.executedCount;
+        variables = new VariableStore(checkpoint.values, checkpoint.declared, checkpoint.initialized);
+        for (int value: checkpoint.operandStack) {
+            operationalStack.push(value);
+        }
+        for (int returnAddress: checkpoint.subroutineStack) {
+            subRoutineStack.push(returnAddress);
+        }
+        output.write(checkpoint.pendingOutput);
+        isRunning = true;
     }
 
     /**
-     * The function examines each line of code to parse
+     * Writes a checkpoint of the program, called between two slices
      */
-    private void examineCodeLine(Integer lineNumber) {
-        String code = silFile.getCodeLines().get(lineNumber);
-        String instruction = StringUtils.getFirstWordOfSentence(code);
-        switch (instruction) {
-            case "INTEGER" -> examineDeclarationInstruction(lineNumber, code); // DONE
-            case "INPUT" -> examineInputInstruction(lineNumber, code); // DONE
-            case "LET" -> examineInitializationInstruction(lineNumber, code); // DONE
-            case "PUSH" -> examinePushInstruction(lineNumber, code); // DONE
-            case "POP" -> examinePopInstruction(lineNumber, code); // DONE
-            case "IF" -> examineConditionalInstruction(lineNumber, code); // DONE
-            case "GOTO" -> examineGotoInstruction(lineNumber, code); // DONE
-            case "GOSUB" -> examineGoSubInstruction(lineNumber, code); //
-            case "PRINT", "PRINTLN" -> examinePrintInstruction(lineNumber, code); // ALMOST DONE
-            case "RET" -> examineReturnInstruction(lineNumber, code); //
-            case "END" -> System.exit(0); // DONE
-            default -> System.out.println("Syntax error occurred while parsing");
+    private void writeCheckpoint() {
+        isCheckpointRequested = false;
+        Checkpoint checkpoint = new Checkpoint(programHash, isOptimizerEnabled, silFile.getInstructions().length,
+                programCounter, executedCount, variables.values.clone(), variables.declaredBits().clone(),
+                variables.initializedBits().clone(), operationalStack.toArray(), subRoutineStack.toArray(),
+                output.pendingOutput());
+        try {
+            checkpoint.write(checkpointFile);
+        } catch (IOException e) {
+            System.err.println("Checkpoint could not be written: "+e.getMessage());
+        }
+        synchronized (this) {
+            checkpointCount++;
+            notifyAll();
         }
     }
 
     /**
-     * This function examines declaration instructions and creates variables for the encountered variable declarations
-     * @param lineNumber line number of declaration instruction
-     * @param codeLine instruction code line
-     */
-    private void examineDeclarationInstruction(Integer lineNumber, String codeLine) {
-        String instruction = StringUtils.deleteFirstWordFromSentence(codeLine);
-        String[] instructionVariables = instruction.split(",");
-        for (String variable: instructionVariables) {
-            if (StringUtils.isValidVariableName(variable))
-                variables.put(variable, new Variable(variable));
-            else {
-                System.out.println("Not a valid variable name at "+lineNumber);
-                System.exit(0);
+     * Keeps the program from running past the checkpoint written on shutdown until the JVM halts,
+     * the instructions after it are executed by the resumed run
+     */
+    private synchronized void awaitHalt() {
+        while (true) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                // only the halt of the JVM ends the wait
             }
         }
     }
 
     /**
-     * This function helps to retrieve console input from the user.
-     * @param lineNumber line number of input instruction
-     * @param codeLine instruction code line
-     */
-    private void examineInputInstruction(Integer lineNumber, String codeLine) {
-        String instruction = StringUtils.deleteFirstWordFromSentence(codeLine);
-        String[] instructionVariables = instruction.split(",");
-        for (String variable: instructionVariables) {
-            if (!variables.containsKey(variable)) {
-                System.out.println(variable+" variable not declared at "+lineNumber);
-                System.exit(0);
-            }
-        }
-        // the input variables were successfully declared by this time
-        String consoleInput = consoleInputReader.nextLine();
-        if (!Objects.equals(consoleInput, "")) {
-            String[] inputs = consoleInput.split(" ");
-            if (inputs.length == instructionVariables.length) {
-                for (int i = 0; i < instructionVariables.length; i++) {
-                    try {
-                        Variable requiredVariable = variables.get(instructionVariables[i]);
-                        requiredVariable.value = Integer.parseInt(inputs[i]);
-                        requiredVariable.state = VariableState.INITIALIZED;
-                    } catch (NumberFormatException e) {
-                        System.out.println(e.getMessage());
-                        System.exit(0);
-                    }
-                }
-            } else {
-                System.out.println("Line "+lineNumber+" missing input value");
-                System.exit(0);
+     * Runs when the JVM shuts down, e.g. on SIGINT or SIGTERM, while the program runs.
+     * The program writes the checkpoint itself at the end of its current slice, the hook only waits for it.
+     */
+    private synchronized void writeCheckpointOnShutdown() {
+        if (isFinished())
+            return;
+        int count = checkpointCount;
+        isShutdownRequested = true;
+        requestCheckpoint();
+        long deadline = System.currentTimeMillis() + CHECKPOINT_SHUTDOWN_TIMEOUT_MILLIS;
+        try {
+            while (checkpointCount == count && !isFinished()) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0)
+                    break;
+                wait(remaining);
             }
-        } else {
-            System.out.println("Line "+lineNumber+" missing input value");
-            System.exit(0);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
     /**
-     * This part of code handles the lines of code that deal with initialization i.e: which start with LET
-     * @param lineNumber is the line number of the initialization instruction
-     * @param code is a particular line of code
-     */
-    private void examineInitializationInstruction(Integer lineNumber, String code) {
-        String instruction = StringUtils.deleteFirstWordFromSentence(code);
-        String[] operands = instruction.split("=");
-        String variableBeingAssigned = operands[0];
-        if (!variables.containsKey(variableBeingAssigned)) {
-            System.out.println(variableBeingAssigned+" variable not declared at "+lineNumber);
-            System.exit(0);
-        } else if (operands.length > 2) {
-            System.out.println("Invalid initialization at "+lineNumber);
-            System.exit(0);
+     * Runs a program that has already been loaded, so that it can be run again without loading it again
+     * @param loadedFile the loaded program
+     * @param programName name of the program used in reports
+     * @return the exit status of the program, EXIT_SUCCESS when it ran to its end
+     */
+    public int execute(SILFile loadedFile, String programName) {
+        if (output == null)
+            output = OutputSink.standardOutput(OutputSink.DEFAULT_BUFFER_SIZE);
+        if (input == null)
+            input = InputSource.standardInput();
+        silFile = loadedFile;
+        if (!silFile.getLoadErrors().isEmpty()) {
+            silFile.getLoadErrors().forEach(output::println);
+            output.flush();
+            return EXIT_LOAD_ERROR;
         }
-        String expressionString = operands[1];
-        boolean hasOnlyDigits = expressionString.matches("[0-9]+");
-        if (hasOnlyDigits)
-            variables.get(variableBeingAssigned).value = Integer.parseInt(expressionString);
-        else
-            variables.get(variableBeingAssigned).value = evaluate(buildMathematicalExpressionForEvaluation(expressionString));
-        variables.get(variableBeingAssigned).state = VariableState.INITIALIZED;
+        if (isProfilingEnabled || traceCapacity > 0) {
+            // compiled code has no dispatch loop to count in, profiled and traced programs are always interpreted
+            profiler = isProfilingEnabled ? new Profiler(silFile, programName, profileSampleInterval) : null;
+            trace = traceCapacity > 0 ? new ExecutionTrace(silFile, traceCapacity) : null;
+            return executeInstructionsInstrumented() ? EXIT_SUCCESS : EXIT_RUNTIME_ERROR;
+        }
+        CompiledProgram compiledProgram = isBytecodeBackendEnabled ? BytecodeCompiler.compile(silFile, compilerWarnings)
+                : null;
+        return execute(silFile, compiledProgram);
     }
 
     /**
-     * Push the expression result on to the top of the operational stack
-     * @param lineNumber is the line number of the push instruction
-     * @param code is a particular line of code
+     * Runs a verified program, used by {@link LoadedProgram} which loads, optimizes and compiles a program once
+     * @param loadedFile the loaded program, without load errors
+     * @param compiledProgram the program translated to bytecode, null to interpret it
+     * @return the exit status of the program
      */
-    private void examinePushInstruction(Integer lineNumber, String code) {
-        String instruction = StringUtils.deleteFirstWordFromSentence(code);
-        int instructionResult = evaluate(buildMathematicalExpressionForEvaluation(instruction));
-        operationalStack.push(instructionResult);
+    int execute(SILFile loadedFile, CompiledProgram compiledProgram) {
+        if (output == null)
+            output = OutputSink.standardOutput(OutputSink.DEFAULT_BUFFER_SIZE);
+        if (input == null)
+            input = InputSource.standardInput();
+        silFile = loadedFile;
+        boolean isSuccessful = compiledProgram != null ? executeCompiledProgram(compiledProgram)
+                : executeInstructions();
+        return isSuccessful ? EXIT_SUCCESS : EXIT_RUNTIME_ERROR;
     }
 
     /**
-     * Pop the top of the stack and store it into the variable
-     * @param lineNumber is the line number of the push instruction
-     * @param code is a particular line of code
+     * Fetch / dispatch loop. Runs decoded instructions starting from the first one until the program
+     * reaches END or runs past its last instruction. Jumps only move the program counter, so loops of
+     * any length execute in constant stack space.
+     * @return false when the program stopped because of an error
      */
-    private void examinePopInstruction(Integer lineNumber, String code) {
-        String variableName = StringUtils.deleteFirstWordFromSentence(code);
-        if (variables.containsKey(variableName)) {
-            try {
-                variables.get(variableName).value = operationalStack.pop();
-                variables.get(variableName).state = VariableState.INITIALIZED;
-            } catch (EmptyStackException e) {
-                System.out.println(e.getMessage());
-                System.exit(0);
+    private boolean executeInstructions() {
+        Instruction[] instructions = silFile.getInstructions();
+        resetExecutionState();
+        programCounter = 0;
+        isRunning = true;
+        Instruction instruction = null;
+        try {
+            while (isRunning && programCounter < instructions.length) {
+                instruction = instructions[programCounter++];
+                examineInstruction(instruction);
             }
-        } else {
-            System.out.println(variableName+" not declared at line "+lineNumber);
-            System.exit(0);
+            return true;
+        } catch (SILRuntimeException e) {
+            output.println(e.getMessage()+" at line "+instruction.lineNumber);
+            isRunning = false;
+            return false;
+        } finally {
+            output.flush();
         }
     }
 
-    private void examineConditionalInstruction(Integer lineNumber, String code) {
-        String codeWithoutIf = StringUtils.deleteFirstWordFromSentence(code).trim();
-        String[] conditionalClauses = codeWithoutIf.split("THEN");
-        String ifClause = conditionalClauses[0];
-        String thenClause = conditionalClauses[1];
-        String relationalOperator = ifClause.contains("<") ? "<" : (ifClause.contains(">") ? ">"
-                : (ifClause.contains("=") ? "=" : (ifClause.contains("!") ? "!" : "" )));
-        if (relationalOperator.equals("")) {
-            System.out.println("If clause doesn't have a valid relational operator at "+lineNumber);
-            System.exit(0);
-        }
-        String[] relationalOperands = ifClause.split(relationalOperator);
-        if (relationalOperands.length > 2) {
-            System.out.println("Invalid conditional statement at "+lineNumber);
-            System.exit(0);
+    /**
+     * Same loop as {@link #executeInstructions()} that also feeds the profiler and the execution trace,
+     * either of which may be null. Kept separate so that the loop used without them does not pay for them.
+     * @return false when the program stopped because of an error
+     */
+    private boolean executeInstructionsInstrumented() {
+        Instruction[] instructions = silFile.getInstructions();
+        resetExecutionState();
+        programCounter = 0;
+        isRunning = true;
+        Instruction instruction = null;
+        boolean isCompleted = false;
+        try {
+            while (isRunning && programCounter < instructions.length) {
+                int index = programCounter++;
+                instruction = instructions[index];
+                int tracePosition = trace != null ? trace.record(index) : 0;
+                if (profiler != null && profiler.count(index, instruction.opcode)) {
+                    long startTime = System.nanoTime();
+                    examineInstruction(instruction);
+                    profiler.addSample(index, System.nanoTime() - startTime);
+                } else {
+                    examineInstruction(instruction);
+                }
+                if (trace != null)
+                    trace.setOperand(tracePosition, traceOperand(instruction));
+            }
+            isCompleted = true;
+            return true;
+        } catch (SILRuntimeException e) {
+            output.println(e.getMessage()+" at line "+instruction.lineNumber);
+            isRunning = false;
+            return false;
+        } finally {
+            output.flush();
+            // also reached when the interpreter itself fails, e.g. with an OutOfMemoryError
+            if (!isCompleted && trace != null) {
+                synchronized (System.err) {
+                    trace.print(System.err);
+                }
+            }
         }
-        if (computeExpressionResult(
-                relationalOperator,
-                evaluate(buildMathematicalExpressionForEvaluation(relationalOperands[0])),
-                evaluate(buildMathematicalExpressionForEvaluation(relationalOperands[1]))
-        )) {
-            thenClause = thenClause.trim();
-            String decisionWord = StringUtils.getFirstWordOfSentence(thenClause);
-            switch (decisionWord) {
-                case "PRINT", "PRINTLN" -> examinePrintInstruction(lineNumber, thenClause);
-                case "GOTO" -> examineGotoInstruction(lineNumber, thenClause);
+    }
+
+    /**
+     * @return the value recorded in the execution trace for an instruction that has just been executed
+     */
+    private int traceOperand(Instruction instruction) {
+        return switch (instruction.opcode) {
+            case LET, POP -> variables.get(instruction.variableSlot);
+            case INPUT -> variables.get(instruction.variableSlots[0]);
+            case PUSH -> operationalStack.peek();
+            case IF, BRANCH, GOTO, GOSUB, RET -> programCounter;
+            default -> 0;
+        };
+    }
+
+    /**
+     * Prepares a verified program to be run in slices with {@link #step(int)}, used by the {@link ProgramScheduler}.
+     * Programs run in slices are always interpreted, compiled code cannot be suspended.
+     * @param loadedFile the loaded program, without load errors
+     */
+    void start(SILFile loadedFile) {
+        if (output == null)
+            output = OutputSink.standardOutput(OutputSink.DEFAULT_BUFFER_SIZE);
+        if (input == null)
+            input = InputSource.standardInput();
+        silFile = loadedFile;
+        resetExecutionState();
+        programCounter = 0;
+        isRunning = silFile.getInstructions().length > 0;
+        stepExitStatus = EXIT_SUCCESS;
+    }
+
+    /**
+     * Runs the started program for at most the given number of instructions, then returns so that
+     * other programs can run. Same loop as {@link #executeInstructions()}, the program state is kept
+     * in this parser between slices.
+     * @param instructionBudget maximum number of instructions to execute
+     * @return the number of instructions executed, less than the budget when the program finished
+     */
+    int step(int instructionBudget) {
+        Instruction[] instructions = silFile.getInstructions();
+        int executedCount = 0;
+        Instruction instruction = null;
+        try {
+            while (isRunning && executedCount < instructionBudget) {
+                instruction = instructions[programCounter++];
+                executedCount++;
+                examineInstruction(instruction);
+                if (programCounter >= instructions.length)
+                    isRunning = false;
             }
+        } catch (SILRuntimeException e) {
+            output.println(e.getMessage()+" at line "+instruction.lineNumber);
+            isRunning = false;
+            stepExitStatus = EXIT_RUNTIME_ERROR;
         }
+        if (!isRunning)
+            output.flush();
+        return executedCount;
     }
 
-    private void examineGotoInstruction(Integer lineNumberOfGotoInstruction, String code) {
-        String lineNumber = StringUtils.deleteFirstWordFromSentence(code);
-        Integer gotoLineNumber = Integer.parseInt(lineNumber);
-        executeInstructions(gotoLineNumber, silFile.getLastLineNumber());
+    /**
+     * Stops a program run in slices before it finished, e.g. because it ran out of its budget
+     * @param reason reported together with the line the program would have executed next
+     */
+    void terminate(String reason) {
+        if (!isRunning)
+            return;
+        output.println(reason+" at line "+silFile.getInstructions()[programCounter].lineNumber);
+        output.flush();
+        isRunning = false;
+        stepExitStatus = EXIT_BUDGET_EXCEEDED;
     }
 
-    private void examineGoSubInstruction(Integer lineNumber, String code) {
-        Integer goSubLineNumber = Integer.parseInt(StringUtils.deleteFirstWordFromSentence(code));
-        int indexOfGoSubLine = lineNumbers.indexOf(lineNumber);
-        Integer nextLineToBeExecuted = lineNumbers.get(indexOfGoSubLine + 1);
-        subRoutineStack.push(nextLineToBeExecuted);
-        executeInstructions(goSubLineNumber, silFile.getLastLineNumber());
+    /**
+     * @return true when a program run in slices has no more instructions to execute
+     */
+    boolean isFinished() {
+        return !isRunning;
     }
 
-    private void examineReturnInstruction(Integer lineNumber, String code) {
-        Integer lineNumberToBeResumed = subRoutineStack.pop();
-        executeInstructions(lineNumberToBeResumed, silFile.getLastLineNumber());
+    /**
+     * @return the exit status of a finished program run in slices
+     */
+    int getExitStatus() {
+        return stepExitStatus;
     }
 
     /**
-     * The function examines the print statements and parses them
-     * @param lineNumber is the instruction line to be printed
-     * @param code is the line to print
-     */
-    private void examinePrintInstruction(Integer lineNumber, String code) {
-        String decisionWord = StringUtils.getFirstWordOfSentence(code);
-        String instruction = StringUtils.deleteFirstWordFromSentence(code);
-        if (variables.containsKey(instruction)) {
-            Integer value = variables.get(instruction).value;
-            if (Objects.equals(decisionWord, "PRINT"))
-                System.out.print(value);
-            else
-                System.out.println(value);
-        } else {
-            if (!instruction.startsWith("\"")) {
-                int expressionResult = evaluate(buildMathematicalExpressionForEvaluation(instruction));
-                if (Objects.equals(decisionWord, "PRINT"))
-                    System.out.print(expressionResult);
-                else
-                    System.out.println(expressionResult);
-            } else {
-                String printableResult = instruction.replaceAll("\"", "");
-                if (Objects.equals(decisionWord, "PRINT"))
-                    System.out.print(printableResult);
-                else
-                    System.out.println(printableResult);
-            }
+     * Runs a program translated by the {@link BytecodeCompiler}. The compiled code calls back into this
+     * parser for stack operations, input and output, so its behaviour matches the interpreter.
+     * @param compiledProgram the compiled program
+     * @return false when the program stopped because of an error
+     */
+    private boolean executeCompiledProgram(CompiledProgram compiledProgram) {
+        resetExecutionState();
+        try {
+            compiledProgram.run(this);
+            return true;
+        } catch (SILRuntimeException e) {
+            output.println(e.getMessage()+" at line "+compiledLineUnderExecution);
+            return false;
+        } finally {
+            output.flush();
         }
     }
 
+    private void resetExecutionState() {
+        if (variables == null || variables.size() != silFile.getVariableTable().size())
+            variables = new VariableStore(silFile.getVariableTable().size());
+        else
+            variables.reset();
+        operationalStack.clear();
+        subRoutineStack.clear();
+    }
+
     /**
-     * This function builds a numerical expression from a variable expression by retrieving the values of
-     * variables from the hashMap which we stored during initialization
-     * @param expression is the expression that has variables instead of numbers
-     * @return the numerical expression
+     * The function dispatches a decoded instruction to its handler
+     * @param instruction is the decoded instruction
      */
-    private String buildMathematicalExpressionForEvaluation(String expression) {
-        StringBuilder mathExpressionBuilder = new StringBuilder();
-        StringBuilder variableNameBuilder = new StringBuilder();
-        for (int i = 0; i < expression.length(); i++) {
-            if (expression.charAt(i) == '+' || expression.charAt(i) == '-'
-                    || expression.charAt(i) == '*' || expression.charAt(i) == '/'
-                    || (expression.charAt(i) >= '0' && expression.charAt(i) <= '9')) {
-                retrieveVariableValueAndAppendToMathExpression(mathExpressionBuilder, variableNameBuilder);
-                mathExpressionBuilder.append(expression.charAt(i));
-            } else {
-                variableNameBuilder.append(expression.charAt(i));
-            }
+    private void examineInstruction(Instruction instruction) {
+        switch (instruction.opcode) {
+            case INTEGER -> examineDeclarationInstruction(instruction);
+            case INPUT -> examineInputInstruction(instruction);
+            case LET -> examineInitializationInstruction(instruction);
+            case PUSH -> examinePushInstruction(instruction);
+            case POP -> examinePopInstruction(instruction);
+            case IF -> examineConditionalInstruction(instruction);
+            case BRANCH -> examineBranchInstruction(instruction);
+            case GOTO -> examineGotoInstruction(instruction);
+            case GOSUB -> examineGoSubInstruction(instruction);
+            case PRINT, PRINTLN -> examinePrintInstruction(instruction);
+            case RET -> examineReturnInstruction(instruction);
+            case END -> isRunning = false;
+            // malformed lines are rejected by the ProgramVerifier when the program is loaded, they only fail here
+            // in programs that did not go through it
+            case INVALID -> throw new SILRuntimeException(instruction.errorMessage);
         }
-        retrieveVariableValueAndAppendToMathExpression(mathExpressionBuilder, variableNameBuilder);
-        return mathExpressionBuilder.toString();
     }
 
-    private void retrieveVariableValueAndAppendToMathExpression(StringBuilder mathExpressionBuilder, StringBuilder variableNameBuilder) {
-        String variableName = variableNameBuilder.toString();
-        if (!(variableName.isBlank() || variableName.isEmpty())) {
-            if (variables.containsKey(variableName)) {
-                mathExpressionBuilder.append(variables.get(variableName).value.toString());
-                variableNameBuilder.delete(0, variableNameBuilder.length());
-            } else {
-                System.out.println(variableName+" variable not declared");
-                System.exit(0);
-            }
+    /**
+     * This function examines declaration instructions and creates variables for the encountered variable declarations
+     * @param instruction the decoded declaration instruction
+     */
+    private void examineDeclarationInstruction(Instruction instruction) {
+        // names were checked by the decoder, invalid declarations are decoded as INVALID instructions
+        for (int slot: instruction.variableSlots) {
+            variables.declare(slot);
         }
     }
 
-    private Boolean computeExpressionResult(String relationalOperator, Integer leftOperand, Integer rightOperand) {
-        return switch (relationalOperator) {
-            case "<" -> leftOperand < rightOperand;
-            case ">" -> leftOperand > rightOperand;
-            case "=" -> Objects.equals(leftOperand, rightOperand);
-            default -> !Objects.equals(leftOperand, rightOperand);
-        };
+    /**
+     * This function helps to retrieve console input from the user.
+     * @param instruction the decoded input instruction
+     */
+    private void examineInputInstruction(Instruction instruction) {
+        // the ProgramVerifier made sure that the input variables are declared
+        int[] inputValues = readInputValues(instruction);
+        for (int i = 0; i < inputValues.length; i++) {
+            variables.set(instruction.variableSlots[i], inputValues[i]);
+        }
     }
 
     /**
-     * This code for expression evaluation has been taken from Geeks for geeks website.
-     * The function is intended to evaluate an expression containing numbers and mathematical operators
-     * Link to the article: <a href="https://www.geeksforgeeks.org/expression-evaluation/">...</a>
-     * @param expression : It is the expression that needs to be evaluated by using a stack
-     * @return : The function returns an integer i.e: the result of the evaluated expression
-     */
-    public int evaluate(String expression)
-    {
-        char[] tokens = expression.toCharArray();
-        Stack<Integer> values = new Stack<>();
-        Stack<Character> ops = new Stack<>();
-        for (int i = 0; i < tokens.length; i++) {
-            if (tokens[i] == ' ')
-                continue;
-            if (tokens[i] >= '0' && tokens[i] <= '9') {
-                StringBuffer sBuffer = new StringBuffer();
-                while (i < tokens.length && tokens[i] >= '0' && tokens[i] <= '9')
-                    sBuffer.append(tokens[i++]);
-                values.push(Integer.parseInt(sBuffer.toString()));
-                i--;
-            }
-            else if (tokens[i] == '(')
-                ops.push(tokens[i]);
-            else if (tokens[i] == ')') {
-                while (ops.peek() != '(')
-                    values.push(applyOp(ops.pop(),
-                            values.pop(),
-                            values.pop()));
-                ops.pop();
-            } else if (tokens[i] == '+' || tokens[i] == '-' || tokens[i] == '*' || tokens[i] == '/') {
-                while (!ops.empty() && hasPrecedence(tokens[i], ops.peek()))
-                    values.push(applyOp(ops.pop(), values.pop(), values.pop()));
-                ops.push(tokens[i]);
-            }
+     * Reads a value for every variable of an INPUT instruction from the input source
+     * @param instruction the decoded input instruction
+     * @return the values read, in the order of the instruction's variables
+     */
+    private int[] readInputValues(Instruction instruction) {
+        int[] inputValues = new int[instruction.variableNames.length];
+        // whatever was printed so far is typically a prompt for this input
+        output.flush();
+        input.readValues(inputValues);
+        return inputValues;
+    }
+
+    /**
+     * This part of code handles the lines of code that deal with initialization i.e: which start with LET
+     * @param instruction the decoded initialization instruction
+     */
+    private void examineInitializationInstruction(Instruction instruction) {
+        variables.set(instruction.variableSlot, instruction.expression.evaluate(variables));
+    }
+
+    /**
+     * Push the expression result on to the top of the operational stack
+     * @param instruction the decoded push instruction
+     */
+    private void examinePushInstruction(Instruction instruction) {
+        int instructionResult = instruction.expression.evaluate(variables);
+        operationalStack.push(instructionResult);
+    }
+
+    /**
+     * Pop the top of the stack and store it into the variable
+     * @param instruction the decoded pop instruction
+     */
+    private void examinePopInstruction(Instruction instruction) {
+        variables.set(instruction.variableSlot, operationalStack.pop());
+    }
+
+    private void examineConditionalInstruction(Instruction instruction) {
+        if (computeExpressionResult(
+                instruction.relationalOperator,
+                instruction.leftExpression.evaluate(variables),
+                instruction.rightExpression.evaluate(variables)
+        ) && instruction.thenInstruction != null) {
+            examineInstruction(instruction.thenInstruction);
         }
-        while (!ops.empty())
-            values.push(applyOp(ops.pop(), values.pop(), values.pop()));
-        return values.pop();
     }
-    public boolean hasPrecedence(char op1, char op2) {
-        if (op2 == '(' || op2 == ')')
-            return false;
-        if ((op1 == '*' || op1 == '/') && (op2 == '+' || op2 == '-'))
-            return false;
+
+    private void examineBranchInstruction(Instruction instruction) {
+        // every loop goes through a jump, the output is handed over there when the JVM shuts down
+        output.flushIfShuttingDown();
+        if (computeExpressionResult(instruction.relationalOperator, instruction.leftExpression.evaluate(variables),
+                instruction.rightExpression.evaluate(variables)))
+            programCounter = instruction.targetIndex;
+    }
+
+    private void examineGotoInstruction(Instruction instruction) {
+        output.flushIfShuttingDown();
+        programCounter = instruction.targetIndex;
+    }
+
+    private void examineGoSubInstruction(Instruction instruction) {
+        // the program counter already points at the instruction following GOSUB
+        subRoutineStack.push(programCounter);
+        programCounter = instruction.targetIndex;
+    }
+
+    private void examineReturnInstruction(Instruction instruction) {
+        output.flushIfShuttingDown();
+        programCounter = subRoutineStack.pop();
+    }
+
+    /**
+     * The function examines the print statements and parses them
+     * @param instruction the decoded print instruction
+     */
+    private void examinePrintInstruction(Instruction instruction) {
+        boolean isNewLine = instruction.opcode == Opcode.PRINTLN;
+        if (instruction.text != null)
+            printText(instruction.text, isNewLine);
         else
-            return true;
+            printValue(instruction.expression.evaluate(variables), isNewLine);
     }
 
-    public int applyOp(char op, int b, int a) {
-        switch (op) {
-            case '+':
-                return a + b;
-            case '-':
-                return a - b;
-            case '*':
-                return a * b;
-            case '/':
-                if (b == 0)
-                    throw new UnsupportedOperationException("Cannot divide by zero");
-                return a / b;
-        }
-        return 0;
+    void printText(String text, boolean isNewLine) {
+        if (isNewLine)
+            output.println(text);
+        else
+            output.print(text);
     }
-}
 
-class Variable {
-    String name;
-    Integer value;
-    VariableState state;
+    void printValue(int value, boolean isNewLine) {
+        if (isNewLine)
+            output.println(value);
+        else
+            output.print(value);
+    }
 
-    Variable(String name) {
-        this.name = name;
-        value = Integer.MIN_VALUE;
-        state = VariableState.DECLARED;
+    static boolean computeExpressionResult(char relationalOperator, int leftOperand, int rightOperand) {
+        return switch (relationalOperator) {
+            case '<' -> leftOperand < rightOperand;
+            case '>' -> leftOperand > rightOperand;
+            case '=' -> leftOperand == rightOperand;
+            default -> leftOperand != rightOperand;
+        };
     }
-}
 
-enum VariableState {
-    DECLARED,
-    INITIALIZED
+    // The following methods are called by programs compiled with the BytecodeCompiler
+
+    void enterLine(int lineNumber) {
+        compiledLineUnderExecution = lineNumber;
+    }
+
+    void pushOperand(int value, int lineNumber) {
+        compiledLineUnderExecution = lineNumber;
+        operationalStack.push(value);
+    }
+
+    int popOperand(int lineNumber) {
+        compiledLineUnderExecution = lineNumber;
+        return operationalStack.pop();
+    }
+
+    void pushReturnAddress(int instructionIndex, int lineNumber) {
+        compiledLineUnderExecution = lineNumber;
+        subRoutineStack.push(instructionIndex);
+    }
+
+    int popReturnAddress(int lineNumber) {
+        compiledLineUnderExecution = lineNumber;
+        output.flushIfShuttingDown();
+        return subRoutineStack.pop();
+    }
+
+    void flushOutputIfShuttingDown() {
+        output.flushIfShuttingDown();
+    }
+
+    int[] readInputValues(int instructionIndex) {
+        Instruction instruction = silFile.getInstructions()[instructionIndex];
+        compiledLineUnderExecution = instruction.lineNumber;
+        return readInputValues(instruction);
+    }
+
+    void executeInstructionAt(int instructionIndex) {
+        Instruction instruction = silFile.getInstructions()[instructionIndex];
+        compiledLineUnderExecution = instruction.lineNumber;
+        examineInstruction(instruction);
+    }
+
+    void storeVariable(int slot, int value, boolean isInitialized) {
+        variables.declare(slot);
+        if (isInitialized)
+            variables.set(slot, value);
+    }
 }
@@ -0,0 +1,213 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Supplies the values read by INPUT instructions.
+ * Sources reading a stream hold one line per INPUT instruction, with one integer per variable of the
+ * instruction separated by spaces or tabs. Sources created from values have no lines, every INPUT takes
+ * the next values in order.
+ */
+public abstract class InputSource {
+
+    // cleared when the last value read was not a well formed integer
+    protected boolean isLastValueValid = true;
+
+    /**
+     * @return true when another value is available
+     */
+    public abstract boolean hasNextInt();
+
+    /**
+     * Reads the next value. Check {@link #hasNextInt()} first.
+     * @return the value, check {@link #isLastValueValid()} to see whether it was a well formed integer
+     */
+    public abstract int nextInt();
+
+    public boolean isLastValueValid() {
+        return isLastValueValid;
+    }
+
+    /**
+     * Reads the values of one INPUT instruction
+     * @param values receives one value per variable of the instruction
+     * @throws SILRuntimeException when values are missing or malformed, or a line holds more values than
+     *                             the instruction reads
+     */
+    public abstract void readValues(int[] values);
+
+    /**
+     * @return a source reading standard input
+     */
+    public static InputSource standardInput() {
+        return new StreamInputSource(System.in);
+    }
+
+    /**
+     * @param fileName a file holding the input values, used to replay a run without a console
+     */
+    public static InputSource file(String fileName) throws IOException {
+        return new StreamInputSource(new FileInputStream(fileName));
+    }
+
+    /**
+     * @param values the input values, consumed in order
+     */
+    public static InputSource values(int... values) {
+        return new ArrayInputSource(values);
+    }
+
+    /**
+     * Tokenizes integers directly from a byte buffer without creating Strings.
+     * {@link #hasNextInt()} and {@link #nextInt()} treat line breaks as any other whitespace,
+     * {@link #readValues(int[])} reads exactly one line.
+     */
+    static final class StreamInputSource extends InputSource {
+
+        private static final int BUFFER_SIZE = 1 << 16;
+
+        private final InputStream inputStream;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int position;
+        private int limit;
+
+        StreamInputSource(InputStream inputStream) {
+            this.inputStream = inputStream;
+        }
+
+        @Override
+        public boolean hasNextInt() {
+            int character;
+            while ((character = peek()) != -1 && isWhitespace(character))
+                position++;
+            return character != -1;
+        }
+
+        @Override
+        public int nextInt() {
+            hasNextInt();
+            return parseInt();
+        }
+
+        @Override
+        public void readValues(int[] values) {
+            if (peek() == -1)
+                throw new SILRuntimeException("Missing input value");
+            try {
+                for (int i = 0; i < values.length; i++) {
+                    skipBlanks();
+                    if (isLineEnd(peek()))
+                        throw new SILRuntimeException("Missing input value");
+                    values[i] = parseInt();
+                    if (!isLastValueValid)
+                        throw new SILRuntimeException("Invalid input value");
+                }
+                skipBlanks();
+                if (!isLineEnd(peek()))
+                    throw new SILRuntimeException("Too many input values");
+            } finally {
+                // the next INPUT reads the next line, also when this one was rejected
+                skipLine();
+            }
+        }
+
+        /**
+         * Parses the token at the current position
+         */
+        private int parseInt() {
+            isLastValueValid = true;
+            boolean isNegative = false;
+            if (peek() == '-' || peek() == '+') {
+                isNegative = peek() == '-';
+                position++;
+            }
+            long value = 0;
+            int digitCount = 0;
+            int character;
+            while ((character = peek()) != -1 && !isWhitespace(character)) {
+                position++;
+                if (character < '0' || character > '9') {
+                    isLastValueValid = false;
+                    continue;
+                }
+                value = value * 10 + (character - '0');
+                if (value > 1L + Integer.MAX_VALUE)
+                    value = 1L + Integer.MAX_VALUE + 1;
+                digitCount++;
+            }
+            value = isNegative ? -value : value;
+            if (digitCount == 0 || value > Integer.MAX_VALUE || value < Integer.MIN_VALUE)
+                isLastValueValid = false;
+            return (int) value;
+        }
+
+        private int peek() {
+            if (position == limit) {
+                try {
+                    limit = inputStream.read(buffer, 0, buffer.length);
+                } catch (IOException e) {
+                    limit = -1;
+                }
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            // unsigned, a 0xFF byte must not read as the end of the input
+            return buffer[position] & 0xFF;
+        }
+
+        private void skipBlanks() {
+            int character;
+            while ((character = peek()) != -1 && character != '\n' && isWhitespace(character))
+                position++;
+        }
+
+        private void skipLine() {
+            int character;
+            while ((character = peek()) != -1) {
+                position++;
+                if (character == '\n')
+                    return;
+            }
+        }
+
+        private static boolean isLineEnd(int character) {
+            return character == -1 || character == '\n';
+        }
+
+        private static boolean isWhitespace(int character) {
+            return character == ' ' || character == '\t' || character == '\n' || character == '\r' || character == '\f';
+        }
+    }
+
+    static final class ArrayInputSource extends InputSource {
+
+        private final int[] values;
+        private int position;
+
+        ArrayInputSource(int[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public boolean hasNextInt() {
+            return position < values.length;
+        }
+
+        @Override
+        public int nextInt() {
+            return values[position++];
+        }
+
+        @Override
+        public void readValues(int[] values) {
+            for (int i = 0; i < values.length; i++) {
+                if (position == this.values.length)
+                    throw new SILRuntimeException("Missing input value");
+                values[i] = this.values[position++];
+            }
+        }
+    }
+}
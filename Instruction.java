@@ -0,0 +1,82 @@
+/**
+ * A single decoded SIL instruction.
+ * The operands of every code line are parsed once when the file is loaded, so the interpreter
+ * never has to look at the source text of a line while executing it.
+ */
+public class Instruction {
+
+    final Opcode opcode;
+    final int lineNumber;
+
+    // INTEGER, INPUT: the declared / input variable names and their slots
+    String[] variableNames;
+    int[] variableSlots;
+    // LET, POP: the variable being assigned and its slot
+    String variableName;
+    int variableSlot;
+    // LET, PUSH, PRINT/PRINTLN: the compiled expression to be evaluated
+    Expression expression;
+    // PRINT/PRINTLN: the string literal to be printed (without quotes)
+    String text;
+    // GOTO, GOSUB, BRANCH: line number of the jump target and the index of its instruction, resolved at load time
+    int targetLineNumber;
+    int targetIndex;
+    // IF, BRANCH: relational operator, both sides of the condition and the instruction executed when it holds
+    char relationalOperator;
+    Expression leftExpression;
+    Expression rightExpression;
+    Instruction thenInstruction;
+    // INVALID: message reported when the instruction is executed
+    String errorMessage;
+
+    Instruction(Opcode opcode, int lineNumber) {
+        this.opcode = opcode;
+        this.lineNumber = lineNumber;
+    }
+
+    /**
+     * @return a new instruction with the same fields, sharing the immutable expressions and names
+     */
+    Instruction copy() {
+        Instruction copy = new Instruction(opcode, lineNumber);
+        copy.variableNames = variableNames;
+        copy.variableSlots = variableSlots;
+        copy.variableName = variableName;
+        copy.variableSlot = variableSlot;
+        copy.expression = expression;
+        copy.text = text;
+        copy.targetLineNumber = targetLineNumber;
+        copy.targetIndex = targetIndex;
+        copy.relationalOperator = relationalOperator;
+        copy.leftExpression = leftExpression;
+        copy.rightExpression = rightExpression;
+        copy.thenInstruction = thenInstruction;
+        copy.errorMessage = errorMessage;
+        return copy;
+    }
+
+    /**
+     * @return the instruction as SIL source, used when listing a program
+     */
+    @Override
+    public String toString() {
+        return lineNumber + " " + statement();
+    }
+
+    private String statement() {
+        return switch (opcode) {
+            case INTEGER, INPUT -> opcode + " " + String.join(", ", variableNames);
+            case LET -> "LET " + variableName + " = " + expression;
+            case PUSH -> "PUSH " + expression;
+            case POP -> "POP " + variableName;
+            case IF -> "IF " + leftExpression + " " + relationalOperator + " " + rightExpression
+                    + (thenInstruction != null ? " THEN " + thenInstruction.statement() : "");
+            case BRANCH -> "IF " + leftExpression + " " + relationalOperator + " " + rightExpression
+                    + " THEN GOTO " + targetLineNumber;
+            case GOTO, GOSUB -> opcode + " " + targetLineNumber;
+            case PRINT, PRINTLN -> opcode + " " + (text != null ? "\"" + text + "\"" : expression.toString());
+            case RET, END -> opcode.toString();
+            case INVALID -> "<" + errorMessage + ">";
+        };
+    }
+}
@@ -0,0 +1,175 @@
+/**
+ * Turns the tokens of a code line into a decoded {@link Instruction}.
+ * All operand parsing and expression compilation happens here, once per line, at load time.
+ * Variable names are resolved to slots of the given {@link VariableTable}.
+ */
+public class InstructionDecoder {
+
+    private static final Keyword[] KEYWORDS = Keyword.values();
+    // error of a line that does not start with an instruction keyword
+    private static final String SYNTAX_ERROR_MESSAGE = "Syntax error occurred while parsing";
+
+    private final VariableTable variableTable;
+    private final ExpressionCompiler expressionCompiler;
+
+    public InstructionDecoder(VariableTable variableTable) {
+        this.variableTable = variableTable;
+        this.expressionCompiler = new ExpressionCompiler(variableTable);
+    }
+
+    /**
+     * Decodes the line currently held by the lexer
+     * @param lexer holds the tokens of a line, the first token being its line number
+     * @return the decoded instruction
+     */
+    public Instruction decode(SILLexer lexer) {
+        return decodeStatement(lexer, lexer.getValue(0), 1, lexer.getTokenCount());
+    }
+
+    /**
+     * Decodes one statement
+     * @param lineNumber is the line number of the instruction
+     * @param start index of the keyword token of the statement
+     * @param end index after the last token of the statement
+     * @return the decoded instruction
+     */
+    private Instruction decodeStatement(SILLexer lexer, int lineNumber, int start, int end) {
+        if (start >= end || lexer.getType(start) != TokenType.KEYWORD)
+            return invalid(lineNumber, SYNTAX_ERROR_MESSAGE);
+        Keyword keyword = KEYWORDS[lexer.getValue(start)];
+        int operandStart = start + 1;
+        return switch (keyword) {
+            case INTEGER -> decodeVariableListInstruction(lexer, Opcode.INTEGER, lineNumber, operandStart, end);
+            case INPUT -> decodeVariableListInstruction(lexer, Opcode.INPUT, lineNumber, operandStart, end);
+            case LET -> decodeInitializationInstruction(lexer, lineNumber, operandStart, end);
+            case PUSH -> decodePushInstruction(lexer, lineNumber, operandStart, end);
+            case POP -> decodePopInstruction(lexer, lineNumber, operandStart, end);
+            case IF -> decodeConditionalInstruction(lexer, lineNumber, operandStart, end);
+            case GOTO -> decodeJumpInstruction(lexer, Opcode.GOTO, lineNumber, operandStart, end);
+            case GOSUB -> decodeJumpInstruction(lexer, Opcode.GOSUB, lineNumber, operandStart, end);
+            case PRINT -> decodePrintInstruction(lexer, Opcode.PRINT, lineNumber, operandStart, end);
+            case PRINTLN -> decodePrintInstruction(lexer, Opcode.PRINTLN, lineNumber, operandStart, end);
+            case RET -> new Instruction(Opcode.RET, lineNumber);
+            case END -> new Instruction(Opcode.END, lineNumber);
+            case THEN -> invalid(lineNumber, SYNTAX_ERROR_MESSAGE);
+        };
+    }
+
+    private Instruction decodeVariableListInstruction(SILLexer lexer, Opcode opcode, int lineNumber, int start, int end) {
+        // names and commas alternate, so a list of n names has 2n - 1 tokens
+        int count = (end - start + 1) / 2;
+        if (count == 0 || (end - start) % 2 == 0)
+            return invalid(lineNumber, "Not a valid variable name");
+        Instruction instruction = new Instruction(opcode, lineNumber);
+        instruction.variableNames = new String[count];
+        instruction.variableSlots = new int[count];
+        for (int i = 0; i < count; i++) {
+            int token = start + 2 * i;
+            if (lexer.getType(token) != TokenType.IDENTIFIER || (i > 0 && !lexer.isOperator(token - 1, ',')))
+                return invalid(lineNumber, "Not a valid variable name");
+            instruction.variableSlots[i] = slotOf(lexer, token);
+            instruction.variableNames[i] = variableTable.nameOf(instruction.variableSlots[i]);
+        }
+        return instruction;
+    }
+
+    private Instruction decodeInitializationInstruction(SILLexer lexer, int lineNumber, int start, int end) {
+        if (end - start < 3 || lexer.getType(start) != TokenType.IDENTIFIER || !lexer.isOperator(start + 1, '=')) {
+            return invalid(lineNumber, "Invalid initialization");
+        }
+        Instruction instruction = new Instruction(Opcode.LET, lineNumber);
+        instruction.variableSlot = slotOf(lexer, start);
+        instruction.variableName = variableTable.nameOf(instruction.variableSlot);
+        instruction.expression = expressionCompiler.compile(lexer, start + 2, end);
+        return instruction.expression != null ? instruction : invalidExpression(lineNumber);
+    }
+
+    private Instruction decodePushInstruction(SILLexer lexer, int lineNumber, int start, int end) {
+        Instruction instruction = new Instruction(Opcode.PUSH, lineNumber);
+        instruction.expression = expressionCompiler.compile(lexer, start, end);
+        return instruction.expression != null ? instruction : invalidExpression(lineNumber);
+    }
+
+    private Instruction decodePopInstruction(SILLexer lexer, int lineNumber, int start, int end) {
+        if (end - start != 1 || lexer.getType(start) != TokenType.IDENTIFIER)
+            return invalid(lineNumber, "Not a valid variable name");
+        Instruction instruction = new Instruction(Opcode.POP, lineNumber);
+        instruction.variableSlot = slotOf(lexer, start);
+        instruction.variableName = variableTable.nameOf(instruction.variableSlot);
+        return instruction;
+    }
+
+    private Instruction decodeConditionalInstruction(SILLexer lexer, int lineNumber, int start, int end) {
+        int thenToken = start;
+        while (thenToken < end && !lexer.isKeyword(thenToken, Keyword.THEN))
+            thenToken++;
+        if (thenToken == end) {
+            return invalid(lineNumber, "Invalid conditional statement");
+        }
+        // the relational operator is the first < > = or ! of the if clause, != is accepted as a synonym of !
+        int operatorToken = start;
+        while (operatorToken < thenToken && !isRelationalOperator(lexer, operatorToken))
+            operatorToken++;
+        if (operatorToken == thenToken) {
+            return invalid(lineNumber, "If clause doesn't have a valid relational operator");
+        }
+        char relationalOperator = (char) lexer.getValue(operatorToken);
+        int rightStart = operatorToken + 1;
+        if (relationalOperator == '!' && lexer.isOperator(rightStart, '='))
+            rightStart++;
+        if (operatorToken == start || rightStart == thenToken) {
+            return invalid(lineNumber, "Invalid conditional statement");
+        }
+        Instruction instruction = new Instruction(Opcode.IF, lineNumber);
+        instruction.relationalOperator = relationalOperator;
+        instruction.leftExpression = expressionCompiler.compile(lexer, start, operatorToken);
+        instruction.rightExpression = expressionCompiler.compile(lexer, rightStart, thenToken);
+        if (instruction.leftExpression == null || instruction.rightExpression == null) {
+            return invalidExpression(lineNumber);
+        }
+        int decisionToken = thenToken + 1;
+        if (lexer.isKeyword(decisionToken, Keyword.PRINT) || lexer.isKeyword(decisionToken, Keyword.PRINTLN)
+                || lexer.isKeyword(decisionToken, Keyword.GOTO)) {
+            instruction.thenInstruction = decodeStatement(lexer, lineNumber, decisionToken, end);
+        }
+        return instruction;
+    }
+
+    private Instruction decodeJumpInstruction(SILLexer lexer, Opcode opcode, int lineNumber, int start, int end) {
+        if (end - start != 1 || lexer.getType(start) != TokenType.INTEGER_LITERAL) {
+            return invalid(lineNumber, "Invalid line number");
+        }
+        Instruction instruction = new Instruction(opcode, lineNumber);
+        instruction.targetLineNumber = lexer.getValue(start);
+        return instruction;
+    }
+
+    private Instruction decodePrintInstruction(SILLexer lexer, Opcode opcode, int lineNumber, int start, int end) {
+        Instruction instruction = new Instruction(opcode, lineNumber);
+        if (end - start == 1 && lexer.getType(start) == TokenType.STRING_LITERAL) {
+            instruction.text = lexer.getText(start);
+            return instruction;
+        }
+        instruction.expression = expressionCompiler.compile(lexer, start, end);
+        return instruction.expression != null ? instruction : invalidExpression(lineNumber);
+    }
+
+    private int slotOf(SILLexer lexer, int token) {
+        return variableTable.slotOf(lexer.getSource(), lexer.getStart(token), lexer.getEnd(token));
+    }
+
+    private static boolean isRelationalOperator(SILLexer lexer, int token) {
+        return lexer.isOperator(token, '<') || lexer.isOperator(token, '>') || lexer.isOperator(token, '=')
+                || lexer.isOperator(token, '!');
+    }
+
+    private static Instruction invalidExpression(int lineNumber) {
+        return invalid(lineNumber, "Invalid expression");
+    }
+
+    private static Instruction invalid(int lineNumber, String errorMessage) {
+        Instruction instruction = new Instruction(Opcode.INVALID, lineNumber);
+        instruction.errorMessage = errorMessage;
+        return instruction;
+    }
+}
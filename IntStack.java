@@ -0,0 +1,68 @@
+import java.util.Arrays;
+
+/**
+ * Unsynchronized, growable stack of primitive ints with a maximum depth.
+ * Used for the SIL operand stack (PUSH / POP) and the subroutine return stack (GOSUB / RET).
+ */
+public class IntStack {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final String name;
+    private final int maxDepth;
+    private int[] elements;
+    private int size;
+
+    /**
+     * @param name is used in error messages, e.g. "Operand stack"
+     * @param maxDepth is the maximum number of elements the stack may hold
+     * @throws IllegalArgumentException when the maximum depth is not positive
+     */
+    public IntStack(String name, int maxDepth) {
+        if (maxDepth <= 0)
+            throw new IllegalArgumentException(name+" needs a maximum depth of at least 1, got "+maxDepth);
+        this.name = name;
+        this.maxDepth = maxDepth;
+        this.elements = new int[Math.min(INITIAL_CAPACITY, maxDepth)];
+    }
+
+    public void push(int value) {
+        if (size == elements.length) {
+            if (size >= maxDepth)
+                throw new SILRuntimeException(name+" overflow, maximum depth of "+maxDepth+" exceeded");
+            elements = Arrays.copyOf(elements, (int) Math.min((long) size * 2 + 1, maxDepth));
+        }
+        elements[size++] = value;
+    }
+
+    public int pop() {
+        if (size == 0)
+            throw new SILRuntimeException(name+" underflow, nothing to pop");
+        return elements[--size];
+    }
+
+    public int peek() {
+        if (size == 0)
+            throw new SILRuntimeException(name+" underflow, nothing to peek");
+        return elements[size - 1];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the elements from the bottom to the top of the stack
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(elements, size);
+    }
+
+    public void clear() {
+        size = 0;
+    }
+}
@@ -0,0 +1,63 @@
+import java.util.Arrays;
+
+/**
+ * Maps SIL line numbers to instruction indices.
+ * When the line numbers are dense enough the table is indexed directly by (lineNumber - firstLineNumber),
+ * otherwise the line numbers are kept sorted in a primitive array and looked up with a binary search.
+ */
+public class JumpTable {
+
+    // a direct table is used as long as it wastes no more than this many slots per instruction
+    private static final int MAX_DIRECT_TABLE_SPREAD = 4;
+    private static final int NOT_FOUND = -1;
+
+    private final int lowestLineNumber;
+    // direct table: instruction index per line number offset, NOT_FOUND for missing lines
+    private final int[] directTable;
+    // sorted table: line numbers in ascending order and the matching instruction indices
+    private final int[] sortedLineNumbers;
+    private final int[] sortedIndices;
+
+    /**
+     * @param lineNumbers line number of every instruction, in instruction order
+     */
+    public JumpTable(int[] lineNumbers) {
+        long[] pairs = new long[lineNumbers.length];
+        for (int index = 0; index < lineNumbers.length; index++) {
+            pairs[index] = ((long) lineNumbers[index] << 32) | index;
+        }
+        Arrays.sort(pairs);
+        lowestLineNumber = lineNumbers.length == 0 ? 0 : (int) (pairs[0] >> 32);
+        long spread = lineNumbers.length == 0 ? 0 : (pairs[pairs.length - 1] >> 32) - lowestLineNumber + 1;
+        if (spread <= (long) MAX_DIRECT_TABLE_SPREAD * lineNumbers.length + 16) {
+            directTable = new int[(int) spread];
+            Arrays.fill(directTable, NOT_FOUND);
+            for (long pair: pairs) {
+                directTable[(int) (pair >> 32) - lowestLineNumber] = (int) pair;
+            }
+            sortedLineNumbers = null;
+            sortedIndices = null;
+        } else {
+            directTable = null;
+            sortedLineNumbers = new int[pairs.length];
+            sortedIndices = new int[pairs.length];
+            for (int i = 0; i < pairs.length; i++) {
+                sortedLineNumbers[i] = (int) (pairs[i] >> 32);
+                sortedIndices[i] = (int) pairs[i];
+            }
+        }
+    }
+
+    /**
+     * @param lineNumber is the line number to look up
+     * @return index of the instruction at that line, or -1 when the program has no such line
+     */
+    public int indexOf(int lineNumber) {
+        if (directTable != null) {
+            int offset = lineNumber - lowestLineNumber;
+            return offset >= 0 && offset < directTable.length ? directTable[offset] : NOT_FOUND;
+        }
+        int position = Arrays.binarySearch(sortedLineNumbers, lineNumber);
+        return position >= 0 ? sortedIndices[position] : NOT_FOUND;
+    }
+}
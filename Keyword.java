@@ -0,0 +1,18 @@
+/**
+ * Keywords recognized by the {@link SILLexer}
+ */
+enum Keyword {
+    INTEGER,
+    INPUT,
+    LET,
+    PUSH,
+    POP,
+    IF,
+    THEN,
+    GOTO,
+    GOSUB,
+    PRINT,
+    PRINTLN,
+    RET,
+    END
+}
@@ -0,0 +1,112 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A program that has been loaded, verified and optionally optimized and compiled once, ready to be run any
+ * number of times. Nothing of it changes after loading and every run gets its own interpreter state, input
+ * and output, so a LoadedProgram can be run from many threads at the same time.
+ */
+public final class LoadedProgram {
+
+    // output buffer of a single run, most runs print little
+    private static final int RUN_OUTPUT_BUFFER_SIZE = 1 << 10;
+
+    private final String name;
+    private final SILFile silFile;
+    // null when the program is interpreted
+    private final CompiledProgram compiledProgram;
+    // why the program is interpreted although it was loaded to be compiled
+    private final List<String> compilerWarnings;
+    private final int maxStackDepth;
+
+    private LoadedProgram(String name, SILFile silFile, CompiledProgram compiledProgram,
+                          List<String> compilerWarnings, int maxStackDepth) {
+        this.name = name;
+        this.silFile = silFile;
+        this.compiledProgram = compiledProgram;
+        this.compilerWarnings = List.copyOf(compilerWarnings);
+        this.maxStackDepth = maxStackDepth;
+    }
+
+    /**
+     * Loads a program to be interpreted as it is written
+     * @param file the SIL source file
+     * @throws SILLoadException when the program has load errors
+     */
+    public static LoadedProgram load(File file) throws IOException {
+        return load(file, false, false, FileParser.DEFAULT_MAX_STACK_DEPTH);
+    }
+
+    /**
+     * @param file the SIL source file
+     * @param isOptimized whether the program is rewritten by the {@link ProgramOptimizer}
+     * @param isCompiled whether the program is translated to bytecode, it is interpreted when it cannot be
+     * @param maxStackDepth maximum depth of the operand stack and of the subroutine stack of every run
+     * @throws SILLoadException when the program has load errors
+     */
+    public static LoadedProgram load(File file, boolean isOptimized, boolean isCompiled, int maxStackDepth)
+            throws IOException {
+        SILFile silFile = new SILFile();
+        silFile.initializeSILFileState(MappedSourceText.map(file));
+        if (!silFile.getLoadErrors().isEmpty())
+            throw new SILLoadException(silFile.getLoadErrors());
+        if (isOptimized)
+            ProgramOptimizer.optimize(silFile);
+        List<String> compilerWarnings = new ArrayList<>();
+        CompiledProgram compiledProgram = isCompiled ? BytecodeCompiler.compile(silFile, compilerWarnings) : null;
+        return new LoadedProgram(file.getName(), silFile, compiledProgram, compilerWarnings, maxStackDepth);
+    }
+
+    /**
+     * Runs the program once
+     * @param inputs the values read by INPUT, in order
+     * @return the exit status and everything the program printed
+     */
+    public RunResult run(int... inputs) {
+        OutputSink output = OutputSink.inMemory(RUN_OUTPUT_BUFFER_SIZE);
+        FileParser parser = new FileParser(maxStackDepth);
+        parser.setOutput(output);
+        parser.setInput(InputSource.values(inputs));
+        long startTime = System.nanoTime();
+        int exitStatus = parser.execute(silFile, compiledProgram);
+        long elapsedNanos = System.nanoTime() - startTime;
+        return new RunResult(exitStatus, output.toString(), elapsedNanos);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isCompiled() {
+        return compiledProgram != null;
+    }
+
+    /**
+     * @return why the program is interpreted although it was loaded to be compiled, empty otherwise
+     */
+    public List<String> getCompilerWarnings() {
+        return compilerWarnings;
+    }
+
+    SILFile getSILFile() {
+        return silFile;
+    }
+
+    int getMaxStackDepth() {
+        return maxStackDepth;
+    }
+
+    /**
+     * @param exitStatus the exit status of the run, see {@link FileParser#EXIT_SUCCESS}
+     * @param output everything the program printed, including the message of a runtime error
+     * @param elapsedNanos time the run took
+     */
+    public record RunResult(int exitStatus, String output, long elapsedNanos) {
+
+        public boolean isSuccessful() {
+            return exitStatus == FileParser.EXIT_SUCCESS;
+        }
+    }
+}
@@ -1,15 +1,480 @@
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 public class Main {
-    public static void main(String[] args) {
+
+    // How long the shutdown hook waits for the running program to hand over its buffered output
+    private static final long OUTPUT_SHUTDOWN_TIMEOUT_MILLIS = 2000;
+
+    private static int maxStackDepth = FileParser.DEFAULT_MAX_STACK_DEPTH;
+    private static boolean isBytecodeBackendEnabled = false;
+    private static int outputBufferSize = OutputSink.DEFAULT_BUFFER_SIZE;
+    private static String outputFileName = null;
+    private static String inputFileName = null;
+    // number of programs run at the same time, 1 runs them one after another
+    private static int parallelism = 1;
+    private static boolean isParallelismSet = false;
+    // set by --cache or --cache-dir, null when loaded programs are not cached
+    private static ProgramCache programCache = null;
+    // set by --batch, every line of the file is an input vector the programs are run with
+    private static String batchFileName = null;
+    // set by --time-slice, --max-instructions or --time-limit, programs are then run by a ProgramScheduler
+    private static boolean isSchedulerEnabled = false;
+    private static int timeSlice = ProgramScheduler.DEFAULT_TIME_SLICE;
+    private static long maxInstructions = Long.MAX_VALUE;
+    private static long timeLimitNanos = Long.MAX_VALUE;
+    // set by --checkpoint, --checkpoint-interval and --resume, meant for running a single long program
+    private static String checkpointFileName = null;
+    private static long checkpointInterval = 0;
+    private static String resumeFileName = null;
+    // set by --trace, number of executed instructions printed on standard error when a program fails
+    private static int traceCapacity = 0;
+    // set by --optimize, --dump-optimized also lists the optimized program on standard error
+    private static boolean isOptimizerEnabled = false;
+    private static boolean isOptimizerDumpEnabled = false;
+    // set by --profile, the hot lines report goes to standard error and a JSON dump next to the source
+    private static boolean isProfilingEnabled = false;
+    private static int profileSampleInterval = 0;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        List<String> fileNames = new ArrayList<>();
+        // options start with -- and apply to all files
+        for (String argument: args) {
+            if (argument.startsWith("--max-stack-depth=")) {
+                maxStackDepth = (int) parseOption(argument, "--max-stack-depth=", 1, Integer.MAX_VALUE);
+            } else if (argument.equals("--compile")) {
+                isBytecodeBackendEnabled = true;
+            } else if (argument.startsWith("--output-buffer=")) {
+                outputBufferSize = (int) parseOption(argument, "--output-buffer=", 1, OutputSink.MAX_BUFFER_SIZE);
+            } else if (argument.startsWith("--output=")) {
+                outputFileName = argument.substring("--output=".length());
+            } else if (argument.startsWith("--input=")) {
+                inputFileName = argument.substring("--input=".length());
+            } else if (argument.equals("--cache")) {
+                programCache = new ProgramCache(null);
+            } else if (argument.startsWith("--cache-dir=")) {
+                programCache = new ProgramCache(new File(argument.substring("--cache-dir=".length())));
+            } else if (argument.equals("--optimize")) {
+                isOptimizerEnabled = true;
+            } else if (argument.equals("--dump-optimized")) {
+                isOptimizerEnabled = true;
+                isOptimizerDumpEnabled = true;
+            } else if (argument.equals("--profile")) {
+                isProfilingEnabled = true;
+            } else if (argument.startsWith("--profile-sample=")) {
+                isProfilingEnabled = true;
+                profileSampleInterval = (int) parseOption(argument, "--profile-sample=", 0, Integer.MAX_VALUE);
+            } else if (argument.startsWith("--batch=")) {
+                batchFileName = argument.substring("--batch=".length());
+            } else if (argument.startsWith("--time-slice=")) {
+                isSchedulerEnabled = true;
+                timeSlice = (int) parseOption(argument, "--time-slice=", 1, Integer.MAX_VALUE);
+            } else if (argument.startsWith("--max-instructions=")) {
+                isSchedulerEnabled = true;
+                maxInstructions = parseOption(argument, "--max-instructions=", 1, Long.MAX_VALUE);
+            } else if (argument.startsWith("--time-limit=")) {
+                isSchedulerEnabled = true;
+                timeLimitNanos = TimeUnit.MILLISECONDS.toNanos(
+                        parseOption(argument, "--time-limit=", 1, Long.MAX_VALUE));
+            } else if (argument.startsWith("--checkpoint=")) {
+                checkpointFileName = argument.substring("--checkpoint=".length());
+            } else if (argument.startsWith("--checkpoint-interval=")) {
+                checkpointInterval = parseOption(argument, "--checkpoint-interval=", 0, Long.MAX_VALUE);
+            } else if (argument.startsWith("--resume=")) {
+                resumeFileName = argument.substring("--resume=".length());
+            } else if (argument.startsWith("--trace=")) {
+                traceCapacity = (int) parseOption(argument, "--trace=", 0, ExecutionTrace.MAX_CAPACITY);
+            } else if (argument.startsWith("--parallel=")) {
+                parallelism = (int) parseOption(argument, "--parallel=", 1, Integer.MAX_VALUE);
+                isParallelismSet = true;
+            } else {
+                fileNames.add(argument);
+            }
+        }
+        checkOptions(fileNames);
+        OutputSink output = outputFileName != null ? OutputSink.file(outputFileName, outputBufferSize)
+                : OutputSink.standardOutput(outputBufferSize);
+        // on SIGINT or SIGTERM the program running on this thread writes out what it buffered before the JVM halts
+        Runtime.getRuntime().addShutdownHook(
+                new Thread(() -> output.flushOnShutdown(OUTPUT_SHUTDOWN_TIMEOUT_MILLIS)));
+        int exitStatus;
+        if (isSchedulerEnabled)
+            exitStatus = runScheduled(fileNames, output);
+        else if (batchFileName != null)
+            exitStatus = runBatches(fileNames, output);
+        else
+            exitStatus = parallelism > 1 ? runConcurrently(fileNames, output) : runSequentially(fileNames, output);
+        output.flush();
+        if (exitStatus != FileParser.EXIT_SUCCESS)
+            System.exit(exitStatus);
+    }
+
+    /**
+     * Rejects option values and combinations that cannot work, instead of silently ignoring them
+     */
+    private static void checkOptions(List<String> fileNames) {
+        // the values of numeric options were checked by parseOption
+        if (checkpointFileName != null || resumeFileName != null) {
+            // a checkpoint holds the state of exactly one program run
+            if (fileNames.size() != 1)
+                exitWithUsageError("--checkpoint and --resume can only be used with a single program file");
+            if (isBytecodeBackendEnabled || isProfilingEnabled || traceCapacity > 0)
+                exitWithUsageError("--compile, --profile and --trace cannot be used with --checkpoint or --resume");
+        }
+        if (isSchedulerEnabled || batchFileName != null) {
+            // scheduled and batch runs load every program once through LoadedProgram, which does not support these
+            List<String> unsupportedOptions = new ArrayList<>();
+            if (isSchedulerEnabled && isBytecodeBackendEnabled)
+                unsupportedOptions.add("--compile");
+            if (isProfilingEnabled)
+                unsupportedOptions.add("--profile");
+            if (traceCapacity > 0)
+                unsupportedOptions.add("--trace");
+            if (programCache != null)
+                unsupportedOptions.add("--cache");
+            if (checkpointFileName != null || resumeFileName != null)
+                unsupportedOptions.add("--checkpoint and --resume");
+            if (!unsupportedOptions.isEmpty())
+                exitWithUsageError(String.join(", ", unsupportedOptions)+" cannot be used with "
+                        +(isSchedulerEnabled ? "--time-slice, --max-instructions or --time-limit" : "--batch"));
+        }
+    }
+
+    /**
+     * @param argument an option with its value, e.g. --parallel=4
+     * @param option the option up to its value, e.g. --parallel=
+     * @return the value of the option, exits with a usage error when it is not a whole number from min to max
+     */
+    private static long parseOption(String argument, String option, long min, long max) {
+        String value = argument.substring(option.length());
+        String name = option.substring(0, option.length() - 1);
+        long number = 0;
+        try {
+            number = Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            exitWithUsageError(name+" must be a number, got "+value);
+        }
+        if (number < min || number > max)
+            exitWithUsageError(name+" must be from "+min+" to "+max+", got "+value);
+        return number;
+    }
+
+    private static void exitWithUsageError(String message) {
+        System.err.println(message);
+        System.exit(FileParser.EXIT_LOAD_ERROR);
+    }
+
+    /**
+     * Runs the files one after another, all of them print to the same output and read the same input
+     * @return the highest exit status of all programs
+     */
+    private static int runSequentially(List<String> fileNames, OutputSink output) throws IOException {
+        InputSource input = inputFileName != null ? InputSource.file(inputFileName) : InputSource.standardInput();
+        int exitStatus = FileParser.EXIT_SUCCESS;
         // Parse each file given in the Command Line Arguments
-        for (String fileName: args) {
+        for (String fileName: fileNames) {
             // retrieve the file from the device based on the file name given in the command line arguments
             File silFile = new File(fileName);
             // Create an instance of File Parser that supports SIL file parsing
-            FileParser silFileParser = new FileParser();
+            FileParser silFileParser = createFileParser(output, input);
             // Start SIL file parsing
-            silFileParser.parse(silFile);
+            exitStatus = Math.max(exitStatus, silFileParser.parse(silFile));
+            reportCompilerWarnings(silFileParser.getCompilerWarnings(), fileName);
+            reportProfile(silFileParser, fileName);
         }
+        return exitStatus;
     }
-}
\ No newline at end of file
+
+    /**
+     * Runs the files on a bounded thread pool. Every program prints into its own buffer, which is written
+     * to the output in the order the files were given once the program has finished. Every program reads
+     * its own copy of the input file, without an input file INPUT has no values to read.
+     * A summary of all runs is printed on standard error.
+     * @return the highest exit status of all programs
+     */
+    private static int runConcurrently(List<String> fileNames, OutputSink output) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        List<Future<ProgramResult>> results = new ArrayList<>();
+        long startTime = System.nanoTime();
+        for (String fileName: fileNames) {
+            results.add(executor.submit(() -> runIsolated(fileName)));
+        }
+        int exitStatus = FileParser.EXIT_SUCCESS;
+        int failedCount = 0;
+        StringBuilder summary = new StringBuilder();
+        for (int i = 0; i < results.size(); i++) {
+            ProgramResult result;
+            try {
+                result = results.get(i).get();
+            } catch (ExecutionException e) {
+                result = new ProgramResult(fileNames.get(i), FileParser.EXIT_RUNTIME_ERROR, 0,
+                        "Error while running the file: "+e.getCause()+System.lineSeparator());
+            }
+            output.print(result.output());
+            // nothing is left buffered while waiting for the next program
+            output.flush();
+            exitStatus = Math.max(exitStatus, result.exitStatus());
+            if (result.exitStatus() != FileParser.EXIT_SUCCESS)
+                failedCount++;
+            summary.append(String.format("%-40s exit %d %10.2f ms%n", result.fileName(), result.exitStatus(),
+                    result.elapsedNanos() / 1e6));
+        }
+        executor.shutdown();
+        summary.append(String.format("%d programs, %d succeeded, %d failed in %.2f ms%n", fileNames.size(),
+                fileNames.size() - failedCount, failedCount, (System.nanoTime() - startTime) / 1e6));
+        System.err.print(summary);
+        return exitStatus;
+    }
+
+    /**
+     * Loads every program once and runs it with every input vector of the batch file on a work stealing pool
+     * of --parallel threads, one per processor by default.
+     * The output of the runs is written in the order of the input vectors, the throughput and latency of
+     * every batch are printed on standard error.
+     * @return the highest exit status of all runs
+     */
+    private static int runBatches(List<String> fileNames, OutputSink output) {
+        List<int[]> inputs = readBatchInputs(output);
+        if (inputs == null)
+            return FileParser.EXIT_LOAD_ERROR;
+        BatchRunner batchRunner = new BatchRunner(isParallelismSet ? parallelism
+                : Runtime.getRuntime().availableProcessors());
+        int exitStatus = FileParser.EXIT_SUCCESS;
+        try {
+            for (String fileName: fileNames) {
+                LoadedProgram program;
+                try {
+                    program = LoadedProgram.load(new File(fileName), isOptimizerEnabled, isBytecodeBackendEnabled,
+                            maxStackDepth);
+                } catch (IOException e) {
+                    output.println("Error while reading the file #file-error");
+                    exitStatus = Math.max(exitStatus, FileParser.EXIT_LOAD_ERROR);
+                    continue;
+                } catch (SILLoadException e) {
+                    output.println(e.getMessage());
+                    exitStatus = Math.max(exitStatus, FileParser.EXIT_LOAD_ERROR);
+                    continue;
+                }
+                reportCompilerWarnings(program.getCompilerWarnings(), fileName);
+                BatchRunner.BatchResult batchResult = batchRunner.run(program, inputs);
+                for (LoadedProgram.RunResult result: batchResult.results()) {
+                    output.print(result.output());
+                    exitStatus = Math.max(exitStatus, result.exitStatus());
+                }
+                output.flush();
+                System.err.println(fileName+": "+batchResult.summary());
+            }
+        } finally {
+            batchRunner.shutdown();
+        }
+        return exitStatus;
+    }
+
+    /**
+     * Runs every program once per input vector of the batch file, or once with all values of the input file or
+     * of standard input, on a {@link ProgramScheduler} with as many carrier threads as --parallel. All runs are
+     * submitted at once and share the carriers in time slices. The output of the runs is written in the order
+     * they were submitted, a summary is printed on standard error.
+     * @return the highest exit status of all runs
+     */
+    private static int runScheduled(List<String> fileNames, OutputSink output) throws InterruptedException {
+        List<int[]> inputs;
+        if (batchFileName != null) {
+            inputs = readBatchInputs(output);
+        } else {
+            int[] values = readInputValues(output);
+            inputs = values != null ? List.of(values) : null;
+        }
+        if (inputs == null)
+            return FileParser.EXIT_LOAD_ERROR;
+        ProgramScheduler scheduler = new ProgramScheduler(parallelism, timeSlice);
+        ProgramScheduler.Limits limits = new ProgramScheduler.Limits(maxInstructions, timeLimitNanos);
+        List<CompletableFuture<LoadedProgram.RunResult>> results = new ArrayList<>();
+        int exitStatus = FileParser.EXIT_SUCCESS;
+        long startTime = System.nanoTime();
+        for (String fileName: fileNames) {
+            try {
+                LoadedProgram program = LoadedProgram.load(new File(fileName), isOptimizerEnabled, false,
+                        maxStackDepth);
+                for (int[] values: inputs) {
+                    results.add(scheduler.submit(program, limits, values));
+                }
+            } catch (IOException e) {
+                output.println("Error while reading the file #file-error");
+                exitStatus = FileParser.EXIT_LOAD_ERROR;
+            } catch (SILLoadException e) {
+                output.println(e.getMessage());
+                exitStatus = FileParser.EXIT_LOAD_ERROR;
+            }
+        }
+        // load errors are written out before waiting for the runs
+        output.flush();
+        int terminatedCount = 0;
+        int failedCount = 0;
+        try {
+            for (CompletableFuture<LoadedProgram.RunResult> future: results) {
+                LoadedProgram.RunResult result;
+                try {
+                    result = future.get();
+                } catch (ExecutionException e) {
+                    result = new LoadedProgram.RunResult(FileParser.EXIT_RUNTIME_ERROR,
+                            "Error while running the file: "+e.getCause()+System.lineSeparator(), 0);
+                }
+                output.print(result.output());
+                // nothing is left buffered while waiting for the next run
+                output.flush();
+                exitStatus = Math.max(exitStatus, result.exitStatus());
+                if (result.exitStatus() == FileParser.EXIT_BUDGET_EXCEEDED)
+                    terminatedCount++;
+                else if (!result.isSuccessful())
+                    failedCount++;
+            }
+        } finally {
+            scheduler.shutdown();
+        }
+        output.flush();
+        System.err.printf("%d runs, %d failed, %d terminated in %.2f ms%n", results.size(), failedCount,
+                terminatedCount, (System.nanoTime() - startTime) / 1e6);
+        return exitStatus;
+    }
+
+    /**
+     * @param output receives the error when the batch file cannot be read or holds a value that is not an integer
+     * @return the input vectors of the batch file, one per line, null when it cannot be used
+     */
+    private static List<int[]> readBatchInputs(OutputSink output) {
+        List<String> lines = readInputLines(batchFileName, output);
+        if (lines == null)
+            return null;
+        List<int[]> inputs = new ArrayList<>();
+        for (int lineNumber = 1; lineNumber <= lines.size(); lineNumber++) {
+            int[] values = parseInputLine(lines.get(lineNumber - 1), lineNumber, batchFileName, output);
+            if (values == null)
+                return null;
+            inputs.add(values);
+        }
+        return inputs;
+    }
+
+    /**
+     * Reads the values of a run that gets all of its input before it starts
+     * @param output receives the error when the input cannot be read or holds a value that is not an integer
+     * @return all values of the input file, or of standard input without one, null when they cannot be used
+     */
+    private static int[] readInputValues(OutputSink output) {
+        List<String> lines = readInputLines(inputFileName, output);
+        if (lines == null)
+            return null;
+        String inputName = inputFileName != null ? inputFileName : "standard input";
+        List<int[]> lineValues = new ArrayList<>();
+        for (int lineNumber = 1; lineNumber <= lines.size(); lineNumber++) {
+            int[] values = parseInputLine(lines.get(lineNumber - 1), lineNumber, inputName, output);
+            if (values == null)
+                return null;
+            lineValues.add(values);
+        }
+        return lineValues.stream().flatMapToInt(Arrays::stream).toArray();
+    }
+
+    /**
+     * @param fileName the file to read, null for standard input
+     * @return the lines, null when they cannot be read
+     */
+    private static List<String> readInputLines(String fileName, OutputSink output) {
+        try {
+            if (fileName == null)
+                return new BufferedReader(new InputStreamReader(System.in)).lines().toList();
+            return Files.readAllLines(Path.of(fileName));
+        } catch (IOException | UncheckedIOException e) {
+            output.println("Error while reading the file #file-error");
+            return null;
+        }
+    }
+
+    /**
+     * @return the values of the line, null when one of them is not an integer
+     */
+    private static int[] parseInputLine(String line, int lineNumber, String inputName, OutputSink output) {
+        String values = line.trim();
+        try {
+            return values.isEmpty() ? new int[0]
+                    : Arrays.stream(values.split("\\s+")).mapToInt(Integer::parseInt).toArray();
+        } catch (NumberFormatException e) {
+            output.println("Invalid input value at line "+lineNumber+" of "+inputName);
+            return null;
+        }
+    }
+
+    private static ProgramResult runIsolated(String fileName) throws IOException {
+        OutputSink programOutput = OutputSink.inMemory();
+        InputSource programInput = inputFileName != null ? InputSource.file(inputFileName) : InputSource.values();
+        long startTime = System.nanoTime();
+        FileParser silFileParser = createFileParser(programOutput, programInput);
+        int exitStatus = silFileParser.parse(new File(fileName));
+        reportCompilerWarnings(silFileParser.getCompilerWarnings(), fileName);
+        reportProfile(silFileParser, fileName);
+        return new ProgramResult(fileName, exitStatus, System.nanoTime() - startTime, programOutput.toString());
+    }
+
+    /**
+     * Prints why a program given with --compile is interpreted on standard error
+     */
+    private static void reportCompilerWarnings(List<String> warnings, String fileName) {
+        synchronized (System.err) {
+            warnings.forEach(warning -> System.err.println(fileName+": "+warning));
+        }
+    }
+
+    /**
+     * Prints the hot lines report of a profiled program and writes its JSON dump to fileName.profile.json
+     */
+    private static void reportProfile(FileParser silFileParser, String fileName) {
+        Profiler profiler = silFileParser.getProfiler();
+        if (profiler == null)
+            return;
+        synchronized (System.err) {
+            profiler.printReport(System.err);
+        }
+        try {
+            profiler.writeJson(fileName + ".profile.json");
+        } catch (IOException e) {
+            System.err.println("Profile could not be written: "+e.getMessage());
+        }
+    }
+
+    private static FileParser createFileParser(OutputSink output, InputSource input) {
+        FileParser silFileParser = new FileParser(maxStackDepth);
+        silFileParser.setOutput(output);
+        silFileParser.setInput(input);
+        silFileParser.setProgramCache(programCache);
+        if (isOptimizerEnabled)
+            silFileParser.enableOptimizer(isOptimizerDumpEnabled);
+        if (isProfilingEnabled)
+            silFileParser.enableProfiling(profileSampleInterval);
+        if (traceCapacity > 0)
+            silFileParser.enableTracing(traceCapacity);
+        if (isBytecodeBackendEnabled)
+            silFileParser.enableBytecodeBackend();
+        if (checkpointFileName != null)
+            silFileParser.enableCheckpoints(new File(checkpointFileName), checkpointInterval);
+        if (resumeFileName != null)
+            silFileParser.resumeFrom(new File(resumeFileName));
+        return silFileParser;
+    }
+
+    private record ProgramResult(String fileName, int exitStatus, long elapsedNanos, String output) { }
+}
@@ -0,0 +1,71 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Source text of a program read straight from a memory mapped file.
+ * SIL code outside string literals is ASCII, so every byte is presented as one character and the lexer
+ * works on the mapped pages without the file ever being copied into Strings.
+ * Only the ranges asked for with {@link #subSequence(int, int)}, such as string literals and new variable names,
+ * are decoded, as UTF-8.
+ */
+public class MappedSourceText implements CharSequence {
+
+    private final ByteBuffer buffer;
+
+    private MappedSourceText(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * @param file the SIL source file
+     * @return the text of the file, mapped read only
+     * @throws IOException when the file cannot be read or is larger than 2 GiB
+     */
+    public static MappedSourceText map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("File too large to be mapped: "+file);
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return new MappedSourceText(buffer);
+        }
+    }
+
+    /**
+     * @return a read only view of the raw bytes of the source, for hashing the content
+     */
+    ByteBuffer bytes() {
+        return buffer.asReadOnlyBuffer();
+    }
+
+    @Override
+    public int length() {
+        return buffer.limit();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (buffer.get(index) & 0xFF);
+    }
+
+    /**
+     * @return the decoded text of the range, this is the only place where the source is copied
+     */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length()).toString();
+    }
+}
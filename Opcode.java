@@ -0,0 +1,21 @@
+/**
+ * Operation performed by a decoded {@link Instruction}
+ */
+enum Opcode {
+    INTEGER,
+    INPUT,
+    LET,
+    PUSH,
+    POP,
+    IF,
+    GOTO,
+    GOSUB,
+    PRINT,
+    PRINTLN,
+    RET,
+    END,
+    // IF ... THEN GOTO fused into a single compare and branch by the ProgramOptimizer
+    BRANCH,
+    // a malformed line, e.g. an unknown keyword or invalid operands, which fails with its error message
+    INVALID
+}
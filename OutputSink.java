@@ -0,0 +1,247 @@
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Buffered destination for everything a SIL program prints.
+ * Values are formatted straight into a byte buffer which is written to the underlying stream only when it
+ * is full or when {@link #flush()} is called, instead of going through the synchronized PrintStream per value.
+ *
+ * A sink is not thread-safe, it belongs to the thread running the program and is only flushed by that thread.
+ * The interpreter flushes it before INPUT, when the program ends and when it fails. When the JVM shuts down,
+ * e.g. on SIGINT or SIGTERM, while the program runs, a shutdown hook calls {@link #flushOnShutdown(long)}, the
+ * only method that may be called from another thread: the running program then flushes the sink itself at its
+ * next jump or print, and writes everything it prints from then on through at once.
+ */
+public class OutputSink {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+    // largest buffer a sink is created with, the buffer is allocated up front
+    public static final int MAX_BUFFER_SIZE = 1 << 26;
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes();
+    private static final byte[] MIN_INT_BYTES = Integer.toString(Integer.MIN_VALUE).getBytes();
+
+    private final OutputStream outputStream;
+    private final byte[] buffer;
+    private int position;
+    // scratch space for formatting one int, filled from the end
+    private final byte[] digits = new byte[11];
+    // set by flush, cleared by the first write after it, read by flushOnShutdown to see that nothing is pending
+    private volatile boolean isFlushed = true;
+    // set by flushOnShutdown, from then on every write is flushed at once
+    private volatile boolean isShuttingDown;
+
+    public OutputSink(OutputStream outputStream, int bufferSize) {
+        this.outputStream = outputStream;
+        this.buffer = new byte[Math.min(Math.max(bufferSize, 16), MAX_BUFFER_SIZE)];
+    }
+
+    /**
+     * @param bufferSize size of the output buffer in bytes
+     * @return a sink writing to standard output
+     */
+    public static OutputSink standardOutput(int bufferSize) {
+        return new OutputSink(System.out, bufferSize);
+    }
+
+    /**
+     * @param fileName file that receives the output, it is created or truncated
+     * @param bufferSize size of the output buffer in bytes
+     * @return a sink writing to the file
+     */
+    public static OutputSink file(String fileName, int bufferSize) throws IOException {
+        return new OutputSink(new FileOutputStream(fileName), bufferSize);
+    }
+
+    /**
+     * @return a sink collecting the output in memory, read it back with {@link #toString()} after flushing
+     */
+    public static OutputSink inMemory() {
+        return inMemory(DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param bufferSize size of the write buffer, small buffers suit programs that print little
+     */
+    public static OutputSink inMemory(int bufferSize) {
+        return new OutputSink(new ByteArrayOutputStream(), bufferSize);
+    }
+
+    public void print(String text) {
+        markPending();
+        int length = text.length();
+        if (length > buffer.length - position)
+            flushBuffer();
+        for (int i = 0; i < length; i++) {
+            char character = text.charAt(i);
+            if (character >= 0x80) {
+                // not plain ASCII, let the platform charset encode the rest
+                writeBytes(text.substring(i).getBytes(Charset.defaultCharset()));
+                return;
+            }
+            if (position == buffer.length)
+                flushBuffer();
+            buffer[position++] = (byte) character;
+        }
+        if (isShuttingDown)
+            flush();
+    }
+
+    public void print(int value) {
+        markPending();
+        if (value == Integer.MIN_VALUE) {
+            writeBytes(MIN_INT_BYTES);
+            return;
+        }
+        int start = digits.length;
+        boolean isNegative = value < 0;
+        int remaining = isNegative ? -value : value;
+        do {
+            digits[--start] = (byte) ('0' + remaining % 10);
+            remaining /= 10;
+        } while (remaining != 0);
+        if (isNegative)
+            digits[--start] = '-';
+        if (digits.length - start > buffer.length - position)
+            flushBuffer();
+        System.arraycopy(digits, start, buffer, position, digits.length - start);
+        position += digits.length - start;
+        if (isShuttingDown)
+            flush();
+    }
+
+    public void println() {
+        writeBytes(LINE_SEPARATOR);
+    }
+
+    public void println(String text) {
+        print(text);
+        println();
+    }
+
+    public void println(int value) {
+        print(value);
+        println();
+    }
+
+    /**
+     * Writes all buffered output to the underlying stream
+     */
+    public void flush() {
+        flushBuffer();
+        try {
+            outputStream.flush();
+        } catch (IOException e) {
+            System.err.println("Error while writing the output.");
+        }
+        isFlushed = true;
+        if (isShuttingDown) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Flushes the sink when the JVM is shutting down and output is pending, called by the thread running the
+     * program at its jumps, so that a program that runs for long without printing hands its output over too
+     */
+    public void flushIfShuttingDown() {
+        if (isShuttingDown && !isFlushed)
+            flush();
+    }
+
+    /**
+     * Called by a shutdown hook while the program may still be running: asks the thread running the program to
+     * flush the sink and waits until nothing is pending. Everything the program prints afterwards is written
+     * through at once, until the JVM halts.
+     * @param timeoutMillis how long to wait for the program, e.g. when it is blocked
+     */
+    public synchronized void flushOnShutdown(long timeoutMillis) {
+        isShuttingDown = true;
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        try {
+            while (!isFlushed) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0)
+                    break;
+                wait(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return everything written so far when the sink was created with {@link #inMemory()}
+     */
+    @Override
+    public String toString() {
+        if (outputStream instanceof ByteArrayOutputStream memory) {
+            flush();
+            return memory.toString(Charset.defaultCharset());
+        }
+        return super.toString();
+    }
+
+    /**
+     * Output that has been printed but not delivered yet, saved in a {@link Checkpoint}.
+     * Sinks writing to a stream are flushed, so nothing is pending; for in-memory sinks this is everything
+     * printed so far, as it is only read back when the program has finished.
+     * @return the pending output
+     */
+    byte[] pendingOutput() {
+        flush();
+        if (outputStream instanceof ByteArrayOutputStream memory)
+            return memory.toByteArray();
+        return new byte[0];
+    }
+
+    /**
+     * Writes output that was pending when a {@link Checkpoint} was taken
+     * @param bytes the pending output
+     */
+    void write(byte[] bytes) {
+        writeBytes(bytes);
+    }
+
+    private void writeBytes(byte[] bytes) {
+        markPending();
+        if (bytes.length > buffer.length - position) {
+            flushBuffer();
+            if (bytes.length > buffer.length)
+                writeToStream(bytes, bytes.length);
+        }
+        if (bytes.length <= buffer.length) {
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+        if (isShuttingDown)
+            flush();
+    }
+
+    /**
+     * Called before every write, only writes the volatile flag when the sink was flushed since the last write
+     */
+    private void markPending() {
+        if (isFlushed)
+            isFlushed = false;
+    }
+
+    private void flushBuffer() {
+        if (position > 0) {
+            writeToStream(buffer, position);
+            position = 0;
+        }
+    }
+
+    private void writeToStream(byte[] bytes, int length) {
+        try {
+            outputStream.write(bytes, 0, length);
+        } catch (IOException e) {
+            System.err.println("Error while writing the output.");
+        }
+    }
+}
@@ -0,0 +1,180 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Lexes and decodes a source in chunks of whole lines on the common {@link ForkJoinPool}.
+ * Lines are independent of each other before jump targets are resolved, so every chunk is decoded with its own
+ * lexer, decoder and variable table. The chunks are merged in source order: variables are given the slots they
+ * would get when the source is decoded on one thread, and the instructions of every chunk are rewritten to use
+ * those slots. Line numbers and jump targets are then resolved by the {@link SILFile} as usual.
+ */
+class ParallelSourceLoader {
+
+    // sources shorter than this are decoded on the calling thread, splitting them costs more than it saves
+    static final int PARALLEL_THRESHOLD = 1 << 20;
+    private static final int CHUNK_LENGTH = 1 << 18;
+
+    /**
+     * @return true when a source of this length is decoded in parallel
+     */
+    static boolean isWorthwhile(int sourceLength) {
+        return sourceLength >= PARALLEL_THRESHOLD && ForkJoinPool.getCommonPoolParallelism() > 1;
+    }
+
+    /**
+     * Decodes every line of the source
+     * @param source the program text
+     * @param variableTable receives the variables of the program in order of their first use
+     * @param loadErrors receives the lexical errors, in source order
+     * @return the decoded instructions in source order
+     */
+    static List<Instruction> decode(CharSequence source, VariableTable variableTable, List<String> loadErrors) {
+        List<Chunk> chunks = new ArrayList<>();
+        int length = source.length();
+        int chunkStart = 0;
+        while (chunkStart < length) {
+            int chunkEnd = Math.min(chunkStart + CHUNK_LENGTH, length);
+            // chunks end after a line break so that no line is split
+            while (chunkEnd < length && source.charAt(chunkEnd - 1) != '\n')
+                chunkEnd++;
+            chunks.add(new Chunk(source, chunkStart, chunkEnd));
+            chunkStart = chunkEnd;
+        }
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        join(pool.invokeAll(chunks));
+
+        // merge the variable tables in source order, then move every chunk to the merged slots
+        List<Callable<Void>> remappings = new ArrayList<>();
+        int firstSourceLineNumber = 1;
+        SILLexer lexer = new SILLexer();
+        for (Chunk chunk: chunks) {
+            int[] slots = new int[chunk.variableTable.size()];
+            boolean isIdentity = true;
+            for (int slot = 0; slot < slots.length; slot++) {
+                slots[slot] = variableTable.slotOf(chunk.variableTable.nameOf(slot));
+                isIdentity &= slots[slot] == slot;
+            }
+            if (!isIdentity)
+                remappings.add(() -> {
+                    chunk.instructions.forEach(instruction -> remapSlots(instruction, slots));
+                    return null;
+                });
+            // errors are rare, their lines are lexed again to report them with their line number in the file
+            for (int i = 0; i < chunk.errorLines.size(); i += 3) {
+                lexer.tokenize(source, chunk.errorLines.get(i), chunk.errorLines.get(i + 1),
+                        firstSourceLineNumber + chunk.errorLines.get(i + 2) - 1);
+                loadErrors.add(lexer.getErrorMessage());
+            }
+            firstSourceLineNumber += chunk.lineCount;
+        }
+        join(pool.invokeAll(remappings));
+
+        List<Instruction> instructions = new ArrayList<>();
+        for (Chunk chunk: chunks) {
+            instructions.addAll(chunk.instructions);
+        }
+        return instructions;
+    }
+
+    /**
+     * Decodes the lines between start and end
+     * @param firstSourceLineNumber line number in the file of the first line, used in error messages
+     * @param instructions receives the decoded instructions
+     * @param errorLines receives start, end and source line number of every line with a lexical error
+     * @return the number of lines
+     */
+    static int decodeLines(CharSequence source, int start, int end, int firstSourceLineNumber,
+                           VariableTable variableTable, List<Instruction> instructions, List<Integer> errorLines) {
+        SILLexer lexer = new SILLexer();
+        InstructionDecoder decoder = new InstructionDecoder(variableTable);
+        int lineStart = start;
+        int sourceLineNumber = firstSourceLineNumber;
+        for (; lineStart < end; sourceLineNumber++) {
+            int lineEnd = lineStart;
+            while (lineEnd < end && source.charAt(lineEnd) != '\n')
+                lineEnd++;
+            if (!lexer.tokenize(source, lineStart, lineEnd, sourceLineNumber)) {
+                errorLines.add(lineStart);
+                errorLines.add(lineEnd);
+                errorLines.add(sourceLineNumber);
+            } else if (lexer.getTokenCount() > 0) {
+                instructions.add(decoder.decode(lexer));
+            }
+            lineStart = lineEnd + 1;
+        }
+        return sourceLineNumber - firstSourceLineNumber;
+    }
+
+    private static void remapSlots(Instruction instruction, int[] slots) {
+        if (instruction.variableSlots != null) {
+            for (int i = 0; i < instruction.variableSlots.length; i++) {
+                instruction.variableSlots[i] = slots[instruction.variableSlots[i]];
+            }
+        }
+        if (instruction.opcode == Opcode.LET || instruction.opcode == Opcode.POP)
+            instruction.variableSlot = slots[instruction.variableSlot];
+        instruction.expression = remapSlots(instruction.expression, slots);
+        instruction.leftExpression = remapSlots(instruction.leftExpression, slots);
+        instruction.rightExpression = remapSlots(instruction.rightExpression, slots);
+        if (instruction.thenInstruction != null)
+            remapSlots(instruction.thenInstruction, slots);
+    }
+
+    private static Expression remapSlots(Expression expression, int[] slots) {
+        if (expression instanceof Expression.VariableRead variableRead)
+            return new Expression.VariableRead(slots[variableRead.slot], variableRead.name);
+        if (expression instanceof Expression.Negation negation)
+            return new Expression.Negation(remapSlots(negation.operand, slots));
+        if (expression instanceof Expression.BinaryOperation operation)
+            return new Expression.BinaryOperation(operation.operator, remapSlots(operation.left, slots),
+                    remapSlots(operation.right, slots));
+        // constants and missing expressions
+        return expression;
+    }
+
+    private static <T> void join(List<Future<T>> futures) {
+        for (Future<T> future: futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while loading", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException runtimeException)
+                    throw runtimeException;
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Lines of the source decoded by one task, with variable slots local to the chunk until it is merged
+     */
+    private static final class Chunk implements Callable<Void> {
+
+        private final CharSequence source;
+        private final int start;
+        private final int end;
+        private final VariableTable variableTable = new VariableTable();
+        private final List<Instruction> instructions = new ArrayList<>();
+        private final List<Integer> errorLines = new ArrayList<>();
+        private int lineCount;
+
+        Chunk(CharSequence source, int start, int end) {
+            this.source = source;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public Void call() {
+            // line numbers in error messages are relative to the chunk, they are fixed up when merging
+            lineCount = decodeLines(source, start, end, 1, variableTable, instructions, errorLines);
+            return null;
+        }
+    }
+}
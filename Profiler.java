@@ -0,0 +1,183 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Collects an execution profile of one interpreted program: how often every line ran, how often every
+ * opcode ran and, when sampling is enabled, an estimate of the wall time spent on every line.
+ * Counting only increments primitive arrays. Timing every instruction would cost more than most
+ * instructions take, so only one instruction out of every sampleInterval is timed and the time of a
+ * line is estimated from its samples and its execution count.
+ */
+public class Profiler {
+
+    // number of lines shown in the hot lines report
+    private static final int HOT_LINE_COUNT = 20;
+    private static final Opcode[] OPCODES = Opcode.values();
+
+    private final SILFile silFile;
+    private final String programName;
+    // 0 disables sampling
+    private final int sampleInterval;
+    private int instructionsUntilSample;
+    // cost of reading the clock twice, taken off every sample
+    private final long timerOverhead;
+
+    // indexed by instruction index
+    private final long[] lineCounts;
+    private final long[] sampledNanos;
+    private final long[] sampleCounts;
+    // indexed by opcode ordinal
+    private final long[] opcodeCounts = new long[OPCODES.length];
+
+    /**
+     * @param silFile the loaded program being profiled
+     * @param programName name used in the report, usually the source file name
+     * @param sampleInterval time one instruction out of this many, 0 to only count
+     */
+    public Profiler(SILFile silFile, String programName, int sampleInterval) {
+        this.silFile = silFile;
+        this.programName = programName;
+        this.sampleInterval = sampleInterval;
+        this.instructionsUntilSample = sampleInterval;
+        int instructionCount = silFile.getInstructions().length;
+        lineCounts = new long[instructionCount];
+        sampledNanos = new long[instructionCount];
+        sampleCounts = new long[instructionCount];
+        timerOverhead = sampleInterval == 0 ? 0 : measureTimerOverhead();
+    }
+
+    /**
+     * Counts one execution of an instruction
+     * @param index index of the instruction
+     * @param opcode opcode of the instruction
+     * @return true when this execution should be timed and reported through {@link #addSample(int, long)}
+     */
+    boolean count(int index, Opcode opcode) {
+        lineCounts[index]++;
+        opcodeCounts[opcode.ordinal()]++;
+        if (sampleInterval == 0 || --instructionsUntilSample > 0)
+            return false;
+        instructionsUntilSample = sampleInterval;
+        return true;
+    }
+
+    void addSample(int index, long nanos) {
+        sampledNanos[index] += Math.max(0, nanos - timerOverhead);
+        sampleCounts[index]++;
+    }
+
+    public long getLineCount(int index) {
+        return lineCounts[index];
+    }
+
+    public long getOpcodeCount(Opcode opcode) {
+        return opcodeCounts[opcode.ordinal()];
+    }
+
+    public long getTotalCount() {
+        long total = 0;
+        for (long count: opcodeCounts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * @return estimated nanoseconds spent on the instruction, -1 when it was never sampled
+     */
+    public long getEstimatedNanos(int index) {
+        return sampleCounts[index] == 0 ? -1 : sampledNanos[index] * lineCounts[index] / sampleCounts[index];
+    }
+
+    /**
+     * Prints the most executed lines and the opcode histogram
+     */
+    public void printReport(PrintStream out) {
+        Instruction[] instructions = silFile.getInstructions();
+        long total = Math.max(1, getTotalCount());
+        out.printf("Profile of %s: %d instructions executed%n", programName, getTotalCount());
+        out.printf("%10s %-12s %14s %7s %12s%n", "line", "opcode", "count", "%", "est. ms");
+        for (int index: hotLines()) {
+            long estimatedNanos = getEstimatedNanos(index);
+            out.printf("%10d %-12s %14d %6.2f%% %12s%n", instructions[index].lineNumber, instructions[index].opcode,
+                    lineCounts[index], 100.0 * lineCounts[index] / total,
+                    estimatedNanos < 0 ? "-" : String.format("%.3f", estimatedNanos / 1e6));
+        }
+        out.println("Opcodes:");
+        for (Opcode opcode: OPCODES) {
+            if (opcodeCounts[opcode.ordinal()] > 0)
+                out.printf("%10s %-12s %14d %6.2f%%%n", "", opcode, opcodeCounts[opcode.ordinal()],
+                        100.0 * opcodeCounts[opcode.ordinal()] / total);
+        }
+    }
+
+    /**
+     * Writes the whole profile as JSON, every line with its count and estimated time
+     * @param fileName the file to write
+     */
+    public void writeJson(String fileName) throws IOException {
+        try (Writer writer = new FileWriter(fileName)) {
+            writeJson(writer);
+        }
+    }
+
+    void writeJson(Writer writer) throws IOException {
+        Instruction[] instructions = silFile.getInstructions();
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"program\": \"").append(escape(programName)).append("\",\n");
+        json.append("  \"totalInstructions\": ").append(getTotalCount()).append(",\n");
+        json.append("  \"sampleInterval\": ").append(sampleInterval).append(",\n");
+        json.append("  \"opcodes\": {");
+        String separator = "\n";
+        for (Opcode opcode: OPCODES) {
+            json.append(separator).append("    \"").append(opcode).append("\": ").append(opcodeCounts[opcode.ordinal()]);
+            separator = ",\n";
+        }
+        json.append("\n  },\n  \"lines\": [");
+        separator = "\n";
+        for (int index = 0; index < instructions.length; index++) {
+            json.append(separator).append("    {\"line\": ").append(instructions[index].lineNumber)
+                    .append(", \"opcode\": \"").append(instructions[index].opcode)
+                    .append("\", \"count\": ").append(lineCounts[index])
+                    .append(", \"estimatedNanos\": ").append(getEstimatedNanos(index)).append('}');
+            separator = ",\n";
+        }
+        json.append("\n  ]\n}\n");
+        writer.write(json.toString());
+    }
+
+    /**
+     * @return indices of the executed instructions with the highest counts, highest first
+     */
+    private int[] hotLines() {
+        long[] pairs = new long[lineCounts.length];
+        int executedCount = 0;
+        for (int index = 0; index < lineCounts.length; index++) {
+            // counts are far below 2^31 in practice, larger ones only lose ordering among themselves
+            if (lineCounts[index] > 0)
+                pairs[executedCount++] = (Math.min(lineCounts[index], Integer.MAX_VALUE) << 32) | (Integer.MAX_VALUE - index);
+        }
+        Arrays.sort(pairs, 0, executedCount);
+        int[] hotLines = new int[Math.min(HOT_LINE_COUNT, executedCount)];
+        for (int i = 0; i < hotLines.length; i++) {
+            hotLines[i] = Integer.MAX_VALUE - (int) pairs[executedCount - 1 - i];
+        }
+        return hotLines;
+    }
+
+    private static long measureTimerOverhead() {
+        long overhead = Long.MAX_VALUE;
+        for (int i = 0; i < 10_000; i++) {
+            long startTime = System.nanoTime();
+            overhead = Math.min(overhead, System.nanoTime() - startTime);
+        }
+        return overhead;
+    }
+
+    private static String escape(String text) {
+        return text.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
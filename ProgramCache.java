@@ -0,0 +1,367 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps loaded programs on disk so that a program that did not change is not lexed and decoded again.
+ * Only verified programs are cached. A cache file holds the decoded instructions with their resolved jump
+ * targets, the line numbers the jump table is built from and the variable slot table. It is keyed by the
+ * SHA-256 hash of the source and is memory mapped when read. A cache file that belongs to another version of
+ * the source, was written by another format version, fails its checksum or holds values out of range is
+ * ignored and written again.
+ *
+ * Layout: magic, format version, source hash, payload length, payload CRC32, payload.
+ */
+public class ProgramCache {
+
+    private static final int MAGIC = 0x53494C43; // "SILC"
+    // increase whenever the layout of the payload changes
+    private static final int FORMAT_VERSION = 3;
+    private static final int HASH_LENGTH = 32;
+    private static final int HEADER_LENGTH = 4 + 4 + HASH_LENGTH + 4 + 4;
+    private static final String CACHE_FILE_EXTENSION = ".silc";
+
+    // expression tags
+    private static final int CONSTANT = 0;
+    private static final int VARIABLE_READ = 1;
+    private static final int NEGATION = 2;
+    private static final int BINARY_OPERATION = 3;
+
+    private static final Opcode[] OPCODES = Opcode.values();
+
+    // directory holding the cache files, null to write each cache file next to its source
+    private final File cacheDirectory;
+
+    /**
+     * @param cacheDirectory directory holding the cache files named after the source hash,
+     *                       or null to write file.sil.silc next to every file.sil
+     */
+    public ProgramCache(File cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    /**
+     * Loads a program from its cache file, or from its source when there is no valid cache file.
+     * Programs loaded from source without load errors are written to the cache.
+     * @param sourceFile the SIL source file
+     * @return the loaded program, check {@link SILFile#getLoadErrors()}
+     */
+    public SILFile load(File sourceFile) throws IOException {
+        MappedSourceText source = MappedSourceText.map(sourceFile);
+        byte[] hash = hash(source);
+        File cacheFile = cacheDirectory != null ? new File(cacheDirectory, toHex(hash) + CACHE_FILE_EXTENSION)
+                : new File(sourceFile.getPath() + CACHE_FILE_EXTENSION);
+        SILFile silFile = read(cacheFile, hash);
+        if (silFile == null) {
+            silFile = new SILFile();
+            silFile.initializeSILFileState(source);
+            if (silFile.getLoadErrors().isEmpty()) {
+                try {
+                    write(cacheFile, hash, silFile);
+                } catch (IOException e) {
+                    System.err.println("Program cache could not be written: "+e.getMessage());
+                }
+            }
+        }
+        silFile.setSourceHash(hash);
+        return silFile;
+    }
+
+    /**
+     * @return the cached program, or null when the cache file is missing, stale or corrupt
+     */
+    private static SILFile read(File cacheFile, byte[] hash) {
+        if (!cacheFile.isFile() || cacheFile.length() < HEADER_LENGTH)
+            return null;
+        try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION)
+                return null;
+            byte[] cachedHash = new byte[HASH_LENGTH];
+            buffer.get(cachedHash);
+            if (!Arrays.equals(hash, cachedHash))
+                return null;
+            int payloadLength = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (payloadLength != buffer.remaining())
+                return null;
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate());
+            if ((int) crc.getValue() != checksum)
+                return null;
+            return readPayload(buffer);
+        } catch (IOException | BufferUnderflowException | IllegalStateException e) {
+            return null;
+        }
+    }
+
+    private static SILFile readPayload(ByteBuffer buffer) {
+        int variableCount = buffer.getInt();
+        // counts are checked against the bytes left before anything is allocated, every name takes at least 4
+        check(variableCount >= 0 && variableCount <= buffer.remaining() / 4);
+        String[] variableNames = new String[variableCount];
+        for (int slot = 0; slot < variableNames.length; slot++) {
+            variableNames[slot] = readString(buffer);
+        }
+        int instructionCount = buffer.getInt();
+        // an instruction takes at least its opcode and line number
+        check(instructionCount > 0 && instructionCount <= buffer.remaining() / 5);
+        int[] lineNumbers = new int[instructionCount];
+        Instruction[] instructions = new Instruction[instructionCount];
+        for (int index = 0; index < instructionCount; index++) {
+            instructions[index] = readInstruction(buffer, variableNames, instructionCount);
+            lineNumbers[index] = instructions[index].lineNumber;
+        }
+        check(!buffer.hasRemaining());
+        SILFile silFile = new SILFile();
+        silFile.restoreSILFileState(instructions, lineNumbers, variableNames);
+        return silFile;
+    }
+
+    private static Instruction readInstruction(ByteBuffer buffer, String[] variableNames, int instructionCount) {
+        int opcode = buffer.get();
+        check(opcode >= 0 && opcode < OPCODES.length);
+        Instruction instruction = new Instruction(OPCODES[opcode], buffer.getInt());
+        switch (instruction.opcode) {
+            case INTEGER, INPUT -> {
+                int count = buffer.getInt();
+                check(count > 0 && count <= buffer.remaining() / 4);
+                instruction.variableNames = new String[count];
+                instruction.variableSlots = new int[count];
+                for (int i = 0; i < count; i++) {
+                    instruction.variableSlots[i] = readSlot(buffer, variableNames);
+                    instruction.variableNames[i] = variableNames[instruction.variableSlots[i]];
+                }
+            }
+            case LET, POP -> {
+                instruction.variableSlot = readSlot(buffer, variableNames);
+                instruction.variableName = variableNames[instruction.variableSlot];
+                if (instruction.opcode == Opcode.LET)
+                    instruction.expression = readExpression(buffer, variableNames);
+            }
+            case PUSH -> instruction.expression = readExpression(buffer, variableNames);
+            case IF -> {
+                instruction.relationalOperator = buffer.getChar();
+                check("<>=!".indexOf(instruction.relationalOperator) >= 0);
+                instruction.leftExpression = readExpression(buffer, variableNames);
+                instruction.rightExpression = readExpression(buffer, variableNames);
+                if (buffer.get() != 0) {
+                    instruction.thenInstruction = readInstruction(buffer, variableNames, instructionCount);
+                    check(instruction.thenInstruction.opcode != Opcode.IF);
+                }
+            }
+            case BRANCH -> {
+                instruction.relationalOperator = buffer.getChar();
+                check("<>=!".indexOf(instruction.relationalOperator) >= 0);
+                instruction.leftExpression = readExpression(buffer, variableNames);
+                instruction.rightExpression = readExpression(buffer, variableNames);
+                instruction.targetLineNumber = buffer.getInt();
+                instruction.targetIndex = buffer.getInt();
+                check(instruction.targetIndex >= 0 && instruction.targetIndex <= instructionCount);
+            }
+            case GOTO, GOSUB -> {
+                instruction.targetLineNumber = buffer.getInt();
+                instruction.targetIndex = buffer.getInt();
+                check(instruction.targetIndex >= 0 && instruction.targetIndex < instructionCount);
+            }
+            case PRINT, PRINTLN -> {
+                if (buffer.get() != 0)
+                    instruction.text = readString(buffer);
+                else
+                    instruction.expression = readExpression(buffer, variableNames);
+            }
+            case INVALID -> instruction.errorMessage = readString(buffer);
+            case RET, END -> { }
+        }
+        return instruction;
+    }
+
+    private static Expression readExpression(ByteBuffer buffer, String[] variableNames) {
+        return switch (buffer.get()) {
+            case CONSTANT -> new Expression.Constant(buffer.getInt());
+            case VARIABLE_READ -> {
+                int slot = readSlot(buffer, variableNames);
+                yield new Expression.VariableRead(slot, variableNames[slot]);
+            }
+            case NEGATION -> new Expression.Negation(readExpression(buffer, variableNames));
+            case BINARY_OPERATION -> {
+                char operator = buffer.getChar();
+                check("+-*/".indexOf(operator) >= 0);
+                Expression left = readExpression(buffer, variableNames);
+                Expression right = readExpression(buffer, variableNames);
+                yield new Expression.BinaryOperation(operator, left, right);
+            }
+            default -> throw new IllegalStateException("Unknown expression tag");
+        };
+    }
+
+    private static int readSlot(ByteBuffer buffer, String[] variableNames) {
+        int slot = buffer.getInt();
+        check(slot >= 0 && slot < variableNames.length);
+        return slot;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        check(length >= 0 && length <= buffer.remaining());
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the cache file through a temporary file, so that programs loading the same source at the same
+     * time never see a partly written cache file
+     */
+    private static void write(File cacheFile, byte[] hash, SILFile silFile) throws IOException {
+        ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream();
+        DataOutputStream payload = new DataOutputStream(payloadBytes);
+        VariableTable variableTable = silFile.getVariableTable();
+        payload.writeInt(variableTable.size());
+        for (int slot = 0; slot < variableTable.size(); slot++) {
+            writeString(payload, variableTable.nameOf(slot));
+        }
+        Instruction[] instructions = silFile.getInstructions();
+        payload.writeInt(instructions.length);
+        for (Instruction instruction: instructions) {
+            writeInstruction(payload, instruction);
+        }
+        payload.flush();
+        byte[] payloadArray = payloadBytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payloadArray);
+
+        ByteArrayOutputStream fileBytes = new ByteArrayOutputStream(HEADER_LENGTH + payloadArray.length);
+        DataOutputStream file = new DataOutputStream(fileBytes);
+        file.writeInt(MAGIC);
+        file.writeInt(FORMAT_VERSION);
+        file.write(hash);
+        file.writeInt(payloadArray.length);
+        file.writeInt((int) crc.getValue());
+        file.write(payloadArray);
+        file.flush();
+
+        Path directory = cacheFile.getAbsoluteFile().toPath().getParent();
+        Files.createDirectories(directory);
+        Path temporaryFile = Files.createTempFile(directory, cacheFile.getName(), ".tmp");
+        try {
+            Files.write(temporaryFile, fileBytes.toByteArray());
+            Files.move(temporaryFile, cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    private static void writeInstruction(DataOutputStream out, Instruction instruction) throws IOException {
+        out.writeByte(instruction.opcode.ordinal());
+        out.writeInt(instruction.lineNumber);
+        switch (instruction.opcode) {
+            case INTEGER, INPUT -> {
+                out.writeInt(instruction.variableSlots.length);
+                for (int slot: instruction.variableSlots) {
+                    out.writeInt(slot);
+                }
+            }
+            case LET, POP -> {
+                out.writeInt(instruction.variableSlot);
+                if (instruction.opcode == Opcode.LET)
+                    writeExpression(out, instruction.expression);
+            }
+            case PUSH -> writeExpression(out, instruction.expression);
+            case IF -> {
+                out.writeChar(instruction.relationalOperator);
+                writeExpression(out, instruction.leftExpression);
+                writeExpression(out, instruction.rightExpression);
+                out.writeBoolean(instruction.thenInstruction != null);
+                if (instruction.thenInstruction != null)
+                    writeInstruction(out, instruction.thenInstruction);
+            }
+            case BRANCH -> {
+                out.writeChar(instruction.relationalOperator);
+                writeExpression(out, instruction.leftExpression);
+                writeExpression(out, instruction.rightExpression);
+                out.writeInt(instruction.targetLineNumber);
+                out.writeInt(instruction.targetIndex);
+            }
+            case GOTO, GOSUB -> {
+                out.writeInt(instruction.targetLineNumber);
+                out.writeInt(instruction.targetIndex);
+            }
+            case PRINT, PRINTLN -> {
+                out.writeBoolean(instruction.text != null);
+                if (instruction.text != null)
+                    writeString(out, instruction.text);
+                else
+                    writeExpression(out, instruction.expression);
+            }
+            case INVALID -> writeString(out, instruction.errorMessage);
+            case RET, END -> { }
+        }
+    }
+
+    private static void writeExpression(DataOutputStream out, Expression expression) throws IOException {
+        if (expression instanceof Expression.Constant constant) {
+            out.writeByte(CONSTANT);
+            out.writeInt(constant.value);
+        } else if (expression instanceof Expression.VariableRead variableRead) {
+            out.writeByte(VARIABLE_READ);
+            out.writeInt(variableRead.slot);
+        } else if (expression instanceof Expression.Negation negation) {
+            out.writeByte(NEGATION);
+            writeExpression(out, negation.operand);
+        } else if (expression instanceof Expression.BinaryOperation operation) {
+            out.writeByte(BINARY_OPERATION);
+            out.writeChar(operation.operator);
+            writeExpression(out, operation.left);
+            writeExpression(out, operation.right);
+        } else {
+            throw new IllegalArgumentException("Unknown expression "+expression);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void check(boolean condition) {
+        if (!condition)
+            throw new IllegalStateException("Corrupt program cache");
+    }
+
+    /**
+     * @return the SHA-256 hash of the source, also used by {@link Checkpoint} to recognise the program
+     */
+    static byte[] hash(MappedSourceText source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(source.bytes());
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte value: bytes) {
+            hex.append(Character.forDigit((value >> 4) & 0xF, 16)).append(Character.forDigit(value & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,288 @@
+import java.io.PrintStream;
+
+/**
+ * Rewrites a loaded program before it runs. The passes are:
+ * <ul>
+ *     <li>constant folding and algebraic simplification of expressions, and IFs whose condition is constant
+ *     are replaced by their outcome</li>
+ *     <li>IF ... THEN GOTO is fused into a single compare and branch instruction</li>
+ *     <li>jumps to GOTOs are threaded to the final target and a GOTO to END becomes END</li>
+ *     <li>lines that can never be reached are removed, then GOTOs to the following line</li>
+ * </ul>
+ * Every remaining instruction keeps its line number, so errors are reported at the same lines as before.
+ */
+public class ProgramOptimizer {
+
+    private final SILFile silFile;
+    private Instruction[] instructions;
+    private boolean[] isRemoved;
+
+    private int foldedExpressionCount;
+    private int foldedConditionCount;
+    private int fusedBranchCount;
+    private int threadedJumpCount;
+    private int removedLineCount;
+
+    private ProgramOptimizer(SILFile silFile) {
+        this.silFile = silFile;
+    }
+
+    /**
+     * Optimizes a program that was loaded without load errors
+     * @param silFile the loaded program, its instructions are replaced by new ones and the old ones are left unchanged
+     * @return the optimizer, holding statistics of what it changed
+     */
+    public static ProgramOptimizer optimize(SILFile silFile) {
+        ProgramOptimizer optimizer = new ProgramOptimizer(silFile);
+        optimizer.run();
+        return optimizer;
+    }
+
+    private void run() {
+        instructions = silFile.getInstructions().clone();
+        isRemoved = new boolean[instructions.length];
+        for (int index = 0; index < instructions.length; index++) {
+            // the passes below change the instructions, the loaded program keeps its own
+            instructions[index] = simplifyExpressions(instructions[index]);
+            instructions[index] = rewriteConditional(index, instructions[index]);
+        }
+        threadJumps();
+        removeUnreachableLines();
+        removeJumpsToNextLine();
+        compact();
+    }
+
+    /**
+     * @return a copy of the instruction with its expressions simplified
+     */
+    private Instruction simplifyExpressions(Instruction instruction) {
+        Instruction simplified = instruction.copy();
+        simplified.expression = simplify(instruction.expression);
+        simplified.leftExpression = simplify(instruction.leftExpression);
+        simplified.rightExpression = simplify(instruction.rightExpression);
+        if (instruction.thenInstruction != null)
+            simplified.thenInstruction = simplifyExpressions(instruction.thenInstruction);
+        return simplified;
+    }
+
+    /**
+     * Folds constant operations and drops operations that do not change their operand, such as x + 0 or x * 1.
+     * Operations that could fail, a division by zero or a read of an undeclared variable, are kept so that
+     * the program still fails the same way.
+     */
+    private Expression simplify(Expression expression) {
+        if (expression instanceof Expression.Negation negation) {
+            Expression operand = simplify(negation.operand);
+            if (operand.isConstant()) {
+                foldedExpressionCount++;
+                return new Expression.Constant(-operand.evaluate(null));
+            }
+            if (operand instanceof Expression.Negation inner) {
+                foldedExpressionCount++;
+                return inner.operand;
+            }
+            return operand == negation.operand ? negation : new Expression.Negation(operand);
+        }
+        if (expression instanceof Expression.BinaryOperation operation) {
+            Expression left = simplify(operation.left);
+            Expression right = simplify(operation.right);
+            char operator = operation.operator;
+            if (left.isConstant() && right.isConstant() && !(operator == '/' && right.evaluate(null) == 0)) {
+                foldedExpressionCount++;
+                return new Expression.Constant(Expression.applyOperator(operator, left.evaluate(null),
+                        right.evaluate(null)));
+            }
+            boolean isIdentity = (operator == '+' || operator == '-') && isConstant(right, 0)
+                    || (operator == '*' || operator == '/') && isConstant(right, 1);
+            if (isIdentity) {
+                foldedExpressionCount++;
+                return left;
+            }
+            if ((operator == '+' && isConstant(left, 0)) || (operator == '*' && isConstant(left, 1))) {
+                foldedExpressionCount++;
+                return right;
+            }
+            if (left == operation.left && right == operation.right)
+                return operation;
+            return new Expression.BinaryOperation(operator, left, right);
+        }
+        return expression;
+    }
+
+    private static boolean isConstant(Expression expression, int value) {
+        return expression.isConstant() && expression.evaluate(null) == value;
+    }
+
+    /**
+     * Replaces an IF with a constant condition by its outcome and fuses IF ... THEN GOTO into a BRANCH
+     */
+    private Instruction rewriteConditional(int index, Instruction instruction) {
+        if (instruction.opcode != Opcode.IF)
+            return instruction;
+        Instruction thenInstruction = instruction.thenInstruction;
+        if (instruction.leftExpression.isConstant() && instruction.rightExpression.isConstant()) {
+            foldedConditionCount++;
+            boolean holds = FileParser.computeExpressionResult(instruction.relationalOperator,
+                    instruction.leftExpression.evaluate(null), instruction.rightExpression.evaluate(null));
+            if (holds && thenInstruction != null)
+                return thenInstruction;
+            isRemoved[index] = true;
+            return instruction;
+        }
+        if (thenInstruction != null && thenInstruction.opcode == Opcode.GOTO) {
+            fusedBranchCount++;
+            Instruction branch = new Instruction(Opcode.BRANCH, instruction.lineNumber);
+            branch.relationalOperator = instruction.relationalOperator;
+            branch.leftExpression = instruction.leftExpression;
+            branch.rightExpression = instruction.rightExpression;
+            branch.targetLineNumber = thenInstruction.targetLineNumber;
+            branch.targetIndex = thenInstruction.targetIndex;
+            return branch;
+        }
+        return instruction;
+    }
+
+    /**
+     * Lets every jump go straight to the end of a chain of GOTOs. A GOTO that ends at END is replaced by END,
+     * a GOTO to the instruction that follows it anyway is removed.
+     */
+    private void threadJumps() {
+        for (int index = 0; index < instructions.length; index++) {
+            Instruction instruction = instructions[index];
+            if (isRemoved[index] || !isJump(instruction.opcode))
+                continue;
+            int target = finalTarget(instruction.targetIndex);
+            if (target != instruction.targetIndex) {
+                threadedJumpCount++;
+                instruction.targetIndex = target;
+                if (target < instructions.length)
+                    instruction.targetLineNumber = instructions[target].lineNumber;
+            }
+            if (instruction.opcode == Opcode.GOTO) {
+                if (target < instructions.length && instructions[target].opcode == Opcode.END) {
+                    threadedJumpCount++;
+                    instructions[index] = new Instruction(Opcode.END, instruction.lineNumber);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes every GOTO to the instruction that follows it anyway once the unreachable lines are gone.
+     * Going backwards lets a GOTO see that the GOTOs after it were removed.
+     */
+    private void removeJumpsToNextLine() {
+        for (int index = instructions.length - 1; index >= 0; index--) {
+            if (!isRemoved[index] && instructions[index].opcode == Opcode.GOTO
+                    && nextInstruction(index + 1) == nextInstruction(instructions[index].targetIndex)) {
+                threadedJumpCount++;
+                isRemoved[index] = true;
+            }
+        }
+    }
+
+    /**
+     * @return index of the first instruction that is not a GOTO when following GOTOs from the given index
+     */
+    private int finalTarget(int target) {
+        // a chain longer than the program is a loop of GOTOs, it is left alone
+        for (int steps = 0; steps < instructions.length; steps++) {
+            int next = nextInstruction(target);
+            if (next >= instructions.length || instructions[next].opcode != Opcode.GOTO)
+                return next;
+            target = instructions[next].targetIndex;
+        }
+        return target;
+    }
+
+    /**
+     * @return index of the first instruction at or after the given index that was not removed,
+     * the instruction count when there is none
+     */
+    private int nextInstruction(int index) {
+        while (index < instructions.length && isRemoved[index])
+            index++;
+        return index;
+    }
+
+    /**
+     * Marks everything that cannot be reached from the first instruction as removed.
+     * RET is not followed, the instruction after every reachable GOSUB is reachable anyway.
+     */
+    private void removeUnreachableLines() {
+        boolean[] isReachable = new boolean[instructions.length + 1];
+        int[] pending = new int[instructions.length + 1];
+        int pendingCount = 0;
+        pending[pendingCount++] = nextInstruction(0);
+        isReachable[pending[0]] = true;
+        while (pendingCount > 0) {
+            int index = pending[--pendingCount];
+            if (index == instructions.length)
+                continue;
+            Instruction instruction = instructions[index];
+            int[] successors = {
+                    fallsThrough(instruction.opcode) ? nextInstruction(index + 1) : -1,
+                    isJump(instruction.opcode) ? nextInstruction(instruction.targetIndex) : -1
+            };
+            for (int successor: successors) {
+                if (successor >= 0 && !isReachable[successor]) {
+                    isReachable[successor] = true;
+                    pending[pendingCount++] = successor;
+                }
+            }
+        }
+        for (int index = 0; index < instructions.length; index++) {
+            if (!isReachable[index] && !isRemoved[index]) {
+                isRemoved[index] = true;
+                removedLineCount++;
+            }
+        }
+    }
+
+    /**
+     * Drops the removed instructions and moves every jump target to the new index of its instruction
+     */
+    private void compact() {
+        int[] newIndices = new int[instructions.length + 1];
+        int count = 0;
+        for (int index = 0; index < instructions.length; index++) {
+            newIndices[index] = count;
+            if (!isRemoved[index])
+                count++;
+        }
+        newIndices[instructions.length] = count;
+        Instruction[] optimizedInstructions = new Instruction[count];
+        for (int index = 0; index < instructions.length; index++) {
+            if (isRemoved[index])
+                continue;
+            Instruction instruction = instructions[index];
+            if (isJump(instruction.opcode))
+                instruction.targetIndex = newIndices[nextInstruction(instruction.targetIndex)];
+            optimizedInstructions[newIndices[index]] = instruction;
+        }
+        silFile.replaceInstructions(optimizedInstructions);
+    }
+
+    private static boolean isJump(Opcode opcode) {
+        return opcode == Opcode.GOTO || opcode == Opcode.GOSUB || opcode == Opcode.BRANCH;
+    }
+
+    private static boolean fallsThrough(Opcode opcode) {
+        return opcode != Opcode.GOTO && opcode != Opcode.END && opcode != Opcode.RET && opcode != Opcode.INVALID;
+    }
+
+    /**
+     * Prints what the optimizer changed and the optimized program, one instruction per line with its index
+     */
+    public void dump(PrintStream out) {
+        out.printf("Optimized program: %d expressions folded, %d conditions folded, %d branches fused, "
+                        + "%d jumps threaded, %d unreachable lines removed%n", foldedExpressionCount,
+                foldedConditionCount, fusedBranchCount, threadedJumpCount, removedLineCount);
+        Instruction[] optimizedInstructions = silFile.getInstructions();
+        for (int index = 0; index < optimizedInstructions.length; index++) {
+            Instruction instruction = optimizedInstructions[index];
+            String target = isJump(instruction.opcode) ? "    -> #" + instruction.targetIndex : "";
+            out.printf("%6d  %s%s%n", index, instruction, target);
+        }
+    }
+}
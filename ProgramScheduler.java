@@ -0,0 +1,139 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Multiplexes many SIL programs on a few carrier threads. Every program runs for a time slice of a fixed
+ * number of instructions and then goes back to the end of the run queue, so programs share the carriers
+ * fairly and a program stuck in a GOTO loop cannot hold a carrier. Programs that exceed their instruction
+ * or wall clock limit are terminated, their run ends with {@link FileParser#EXIT_BUDGET_EXCEEDED}.
+ * Scheduled programs are always interpreted, compiled code cannot be suspended between instructions.
+ */
+public class ProgramScheduler {
+
+    public static final int DEFAULT_TIME_SLICE = 10_000;
+
+    private final int timeSlice;
+    private final LinkedBlockingQueue<ScheduledRun> runQueue = new LinkedBlockingQueue<>();
+    private final Thread[] carriers;
+
+    /**
+     * @param carrierCount number of threads the programs are run on
+     * @param timeSlice number of instructions a program runs before the next program gets its turn
+     * @throws IllegalArgumentException when there are no carriers or the time slice is not positive
+     */
+    public ProgramScheduler(int carrierCount, int timeSlice) {
+        if (carrierCount <= 0)
+            throw new IllegalArgumentException("At least one carrier thread is needed, got "+carrierCount);
+        if (timeSlice <= 0)
+            throw new IllegalArgumentException("Time slice must be at least one instruction, got "+timeSlice);
+        this.timeSlice = timeSlice;
+        carriers = new Thread[carrierCount];
+        for (int i = 0; i < carrierCount; i++) {
+            carriers[i] = new Thread(this::runCarrier, "sil-carrier-"+i);
+            carriers[i].setDaemon(true);
+            carriers[i].start();
+        }
+    }
+
+    /**
+     * Queues a run of the program
+     * @param program the loaded program
+     * @param limits the budget of the run
+     * @param inputs the values read by INPUT, in order
+     * @return completed with the result of the run once the program finished or was terminated
+     */
+    public CompletableFuture<LoadedProgram.RunResult> submit(LoadedProgram program, Limits limits, int... inputs) {
+        ScheduledRun run = new ScheduledRun(program, limits, inputs);
+        runQueue.add(run);
+        return run.result;
+    }
+
+    /**
+     * Stops the carrier threads, runs that did not finish yet are abandoned
+     */
+    public void shutdown() {
+        for (Thread carrier: carriers) {
+            carrier.interrupt();
+        }
+    }
+
+    private void runCarrier() {
+        try {
+            while (true) {
+                ScheduledRun run = runQueue.take();
+                if (runSlice(run))
+                    runQueue.add(run);
+            }
+        } catch (InterruptedException e) {
+            // shutdown
+        }
+    }
+
+    /**
+     * Gives the run its next time slice
+     * @return true when the run has to be scheduled again
+     */
+    private boolean runSlice(ScheduledRun run) {
+        try {
+            if (run.parser == null)
+                run.start();
+            Limits limits = run.limits;
+            long remainingInstructions = limits.maxInstructions() - run.executedCount;
+            run.executedCount += run.parser.step((int) Math.min(timeSlice, remainingInstructions));
+            if (!run.parser.isFinished()) {
+                if (run.executedCount >= limits.maxInstructions())
+                    run.parser.terminate("Instruction limit of "+limits.maxInstructions()+" exceeded");
+                else if (System.nanoTime() - run.startTime >= limits.maxNanos())
+                    run.parser.terminate("Time limit of "+TimeUnit.NANOSECONDS.toMillis(limits.maxNanos())
+                            +" ms exceeded");
+                else
+                    return true;
+            }
+            run.result.complete(new LoadedProgram.RunResult(run.parser.getExitStatus(), run.output.toString(),
+                    System.nanoTime() - run.startTime));
+        } catch (Throwable e) {
+            // also errors such as a StackOverflowError, the run fails but the carrier keeps serving the others
+            run.result.completeExceptionally(e);
+        }
+        return false;
+    }
+
+    /**
+     * Budget of a scheduled run
+     * @param maxInstructions number of instructions the program may execute
+     * @param maxNanos wall clock time the program may take, counted from its first time slice
+     */
+    public record Limits(long maxInstructions, long maxNanos) {
+
+        public static final Limits UNLIMITED = new Limits(Long.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    private static final class ScheduledRun {
+
+        private final LoadedProgram program;
+        private final Limits limits;
+        private final int[] inputs;
+        private final CompletableFuture<LoadedProgram.RunResult> result = new CompletableFuture<>();
+        // created on the first time slice, so queued runs hold no interpreter state
+        private FileParser parser;
+        private OutputSink output;
+        private long startTime;
+        private long executedCount;
+
+        ScheduledRun(LoadedProgram program, Limits limits, int[] inputs) {
+            this.program = program;
+            this.limits = limits;
+            this.inputs = inputs;
+        }
+
+        void start() {
+            output = OutputSink.inMemory(1 << 10);
+            parser = new FileParser(program.getMaxStackDepth());
+            parser.setOutput(output);
+            parser.setInput(InputSource.values(inputs));
+            parser.start(program.getSILFile());
+            startTime = System.nanoTime();
+        }
+    }
+}
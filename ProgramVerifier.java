@@ -0,0 +1,201 @@
+import java.util.List;
+
+/**
+ * Checks a decoded program as a whole before any of its lines runs, so that the interpreter does not have to
+ * check anything per step. A verified program
+ * <ul>
+ *     <li>has no malformed lines, such as invalid names, IFs without a relational operator or unknown keywords</li>
+ *     <li>only jumps to lines that exist</li>
+ *     <li>only uses variables that are declared by an INTEGER on every path leading to the use</li>
+ *     <li>cannot reach a RET without having gone through a GOSUB</li>
+ * </ul>
+ * Every problem found is reported, in line order, not only the first one.
+ */
+public class ProgramVerifier {
+
+    private final Instruction[] instructions;
+    private final List<String> errors;
+    private final int words;
+    // index of the instruction following every GOSUB, where a RET may continue
+    private final int[] returnSites;
+
+    // variables declared on every path reaching an instruction, words longs per instruction
+    private long[] declaredBefore;
+    private boolean[] isReachable;
+    // reachable without entering a subroutine
+    private boolean[] isReachableOutsideSubroutine;
+
+    private ProgramVerifier(SILFile silFile, List<String> errors) {
+        this.instructions = silFile.getInstructions();
+        this.errors = errors;
+        this.words = (silFile.getVariableTable().size() + 63) >>> 6;
+        int returnSiteCount = 0;
+        for (Instruction instruction: instructions) {
+            if (instruction.opcode == Opcode.GOSUB)
+                returnSiteCount++;
+        }
+        returnSites = new int[returnSiteCount];
+        returnSiteCount = 0;
+        for (int index = 0; index < instructions.length; index++) {
+            if (instructions[index].opcode == Opcode.GOSUB)
+                returnSites[returnSiteCount++] = index + 1;
+        }
+    }
+
+    /**
+     * @param silFile a decoded program whose jump targets were resolved, unknown targets having index -1
+     * @param errors receives a message for every problem found
+     */
+    public static void verify(SILFile silFile, List<String> errors) {
+        ProgramVerifier verifier = new ProgramVerifier(silFile, errors);
+        verifier.computeDeclaredVariables();
+        verifier.computeReachableOutsideSubroutine();
+        for (int index = 0; index < verifier.instructions.length; index++) {
+            verifier.checkInstruction(index);
+        }
+    }
+
+    private void checkInstruction(int index) {
+        Instruction instruction = instructions[index];
+        Instruction effective = instruction.opcode == Opcode.IF && instruction.thenInstruction != null
+                ? instruction.thenInstruction : instruction;
+        if (instruction.opcode == Opcode.INVALID)
+            error(instruction.errorMessage, instruction);
+        if (isJump(effective.opcode) && effective.targetIndex < 0)
+            error("Line "+effective.targetLineNumber+" not found", instruction);
+        if (isReachable[index])
+            checkDeclarations(index, instruction);
+        if (instruction.opcode == Opcode.RET && isReachableOutsideSubroutine[index])
+            error("RET without GOSUB", instruction);
+    }
+
+    private void checkDeclarations(int index, Instruction instruction) {
+        int offset = index * words;
+        switch (instruction.opcode) {
+            case INPUT -> {
+                for (int i = 0; i < instruction.variableSlots.length; i++) {
+                    checkDeclared(offset, instruction.variableSlots[i], instruction.variableNames[i], instruction);
+                }
+            }
+            case LET, POP -> checkDeclared(offset, instruction.variableSlot, instruction.variableName, instruction);
+        }
+        checkDeclared(offset, instruction.expression, instruction);
+        checkDeclared(offset, instruction.leftExpression, instruction);
+        checkDeclared(offset, instruction.rightExpression, instruction);
+        if (instruction.thenInstruction != null)
+            checkDeclared(offset, instruction.thenInstruction.expression, instruction);
+    }
+
+    private void checkDeclared(int offset, Expression expression, Instruction instruction) {
+        if (expression instanceof Expression.VariableRead variableRead) {
+            checkDeclared(offset, variableRead.slot, variableRead.name, instruction);
+        } else if (expression instanceof Expression.Negation negation) {
+            checkDeclared(offset, negation.operand, instruction);
+        } else if (expression instanceof Expression.BinaryOperation operation) {
+            checkDeclared(offset, operation.left, instruction);
+            checkDeclared(offset, operation.right, instruction);
+        }
+    }
+
+    private void checkDeclared(int offset, int slot, String name, Instruction instruction) {
+        if ((declaredBefore[offset + (slot >>> 6)] & (1L << slot)) == 0)
+            error(name+" variable not declared", instruction);
+    }
+
+    private void error(String message, Instruction instruction) {
+        errors.add(message+" at line "+instruction.lineNumber);
+    }
+
+    /**
+     * Forward data flow analysis: a variable is declared before an instruction when it is declared on every
+     * path from the first instruction to it. A GOSUB continues at its target and every RET may continue after
+     * any GOSUB, so variables declared by a subroutine count as declared after it returns.
+     */
+    private void computeDeclaredVariables() {
+        declaredBefore = new long[instructions.length * words];
+        isReachable = new boolean[instructions.length];
+        if (instructions.length == 0)
+            return;
+        long[] declaredAfter = new long[words];
+        int[] pending = new int[instructions.length];
+        boolean[] isPending = new boolean[instructions.length];
+        int pendingCount = 0;
+        isReachable[0] = true;
+        pending[pendingCount++] = 0;
+        isPending[0] = true;
+        while (pendingCount > 0) {
+            int index = pending[--pendingCount];
+            isPending[index] = false;
+            Instruction instruction = instructions[index];
+            System.arraycopy(declaredBefore, index * words, declaredAfter, 0, words);
+            if (instruction.opcode == Opcode.INTEGER) {
+                for (int slot: instruction.variableSlots) {
+                    declaredAfter[slot >>> 6] |= 1L << slot;
+                }
+            }
+            for (int successor: successors(index, true)) {
+                if (successor < 0 || successor >= instructions.length)
+                    continue;
+                boolean isChanged = !isReachable[successor];
+                int offset = successor * words;
+                for (int word = 0; word < words; word++) {
+                    long merged = isReachable[successor] ? declaredBefore[offset + word] & declaredAfter[word]
+                            : declaredAfter[word];
+                    isChanged |= merged != declaredBefore[offset + word];
+                    declaredBefore[offset + word] = merged;
+                }
+                isReachable[successor] = true;
+                if (isChanged && !isPending[successor]) {
+                    isPending[successor] = true;
+                    pending[pendingCount++] = successor;
+                }
+            }
+        }
+    }
+
+    /**
+     * Marks the instructions that run with an empty subroutine stack: everything reachable from the first
+     * instruction without following a GOSUB into its subroutine
+     */
+    private void computeReachableOutsideSubroutine() {
+        isReachableOutsideSubroutine = new boolean[instructions.length];
+        if (instructions.length == 0)
+            return;
+        int[] pending = new int[instructions.length];
+        int pendingCount = 0;
+        pending[pendingCount++] = 0;
+        isReachableOutsideSubroutine[0] = true;
+        while (pendingCount > 0) {
+            int index = pending[--pendingCount];
+            for (int successor: successors(index, false)) {
+                if (successor >= 0 && successor < instructions.length && !isReachableOutsideSubroutine[successor]) {
+                    isReachableOutsideSubroutine[successor] = true;
+                    pending[pendingCount++] = successor;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param isEnteringSubroutines whether a GOSUB continues at its target and a RET after the GOSUBs,
+     *                              otherwise a GOSUB continues at the next instruction and a RET nowhere
+     * @return the indices that may run after the instruction, -1 for none
+     */
+    private int[] successors(int index, boolean isEnteringSubroutines) {
+        Instruction instruction = instructions[index];
+        return switch (instruction.opcode) {
+            case GOTO -> new int[] {instruction.targetIndex};
+            case GOSUB -> new int[] {isEnteringSubroutines ? instruction.targetIndex : index + 1};
+            case RET -> isEnteringSubroutines ? returnSites : new int[0];
+            case BRANCH -> new int[] {index + 1, instruction.targetIndex};
+            case IF -> new int[] {index + 1, instruction.thenInstruction != null
+                    && instruction.thenInstruction.opcode == Opcode.GOTO ? instruction.thenInstruction.targetIndex : -1};
+            case END, INVALID -> new int[0];
+            default -> new int[] {index + 1};
+        };
+    }
+
+    private static boolean isJump(Opcode opcode) {
+        return opcode == Opcode.GOTO || opcode == Opcode.GOSUB || opcode == Opcode.BRANCH;
+    }
+}
@@ -1,49 +1,184 @@
-import java.util.LinkedHashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.function.BiConsumer;
 
 /**
- * This class is a singleton which is used to store the content and properties of input instructions file.
- * Class stores code lines, last line number, current line under execution
+ * This class is used to store the content and properties of an input instructions file.
+ * Every loaded program has its own instance, so several programs can be loaded and run at the same time.
+ * Class stores decoded instructions, the jump table, first and last line number
  */
 public class SILFile {
 
-    private static SILFile sInstance;
-    private final LinkedHashMap<Integer, String> codeLines = new LinkedHashMap<>();
-    private Integer currentLineUnderExecution;
+    private Instruction[] instructions;
+    private int[] lineNumbers;
+    private JumpTable jumpTable;
+    private final VariableTable variableTable = new VariableTable();
+    // problems found while loading, such as jumps to lines that do not exist
+    private final List<String> loadErrors = new ArrayList<>();
+    // SHA-256 hash of the source, only computed when it is needed by the ProgramCache or for checkpoints
+    private byte[] sourceHash;
     private Integer firstLineNumber;
     private Integer lastLineNumber;
 
-    // constructor made private because this is going to be a Singleton
-    private SILFile() { }
+    /**
+     * Lexes and decodes the whole source in one pass. Only the decoded instructions are kept,
+     * the source itself is never split into lines or copied. Large sources are decoded in chunks
+     * on several threads by the {@link ParallelSourceLoader}.
+     * @param source the program text, usually a {@link MappedSourceText}
+     */
+    public void initializeSILFileState(CharSequence source) {
+        // lex and decode every line once so that execution never has to re-parse the source text
+        List<Instruction> decodedInstructions;
+        if (ParallelSourceLoader.isWorthwhile(source.length())) {
+            decodedInstructions = ParallelSourceLoader.decode(source, variableTable, loadErrors);
+        } else {
+            decodedInstructions = new ArrayList<>();
+            List<Integer> errorLines = new ArrayList<>();
+            ParallelSourceLoader.decodeLines(source, 0, source.length(), 1, variableTable, decodedInstructions,
+                    errorLines);
+            reportLexicalErrors(source, errorLines);
+        }
+        instructions = decodedInstructions.toArray(new Instruction[0]);
+        if (!loadErrors.isEmpty())
+            return;
+        if (instructions.length == 0) {
+            loadErrors.add("The program has no instructions");
+            return;
+        }
+        // Retrieve the line numbers of the file
+        lineNumbers = new int[instructions.length];
+        for (int index = 0; index < instructions.length; index++) {
+            lineNumbers[index] = instructions[index].lineNumber;
+        }
+        setFirstLineNumber(lineNumbers[0]);
+        setLastLineNumber(lineNumbers[lineNumbers.length - 1]);
+        if (reportDuplicateLineNumbers())
+            return;
+        jumpTable = new JumpTable(lineNumbers);
+        resolveJumpTargets();
+        // everything the interpreter relies on is checked once here instead of on every step
+        ProgramVerifier.verify(this, loadErrors);
+    }
 
-    // returns the InputFile Singleton
-    public static SILFile getInstance() {
-        if (sInstance == null) {
-            sInstance = new SILFile();
+    /**
+     * Restores a program that was loaded before, used by the {@link ProgramCache}.
+     * The jump targets of the instructions must already be resolved.
+     * @param instructions the decoded instructions
+     * @param lineNumbers line number of every instruction, in instruction order
+     * @param variableNames variable names in slot order
+     */
+    void restoreSILFileState(Instruction[] instructions, int[] lineNumbers, String[] variableNames) {
+        this.instructions = instructions;
+        this.lineNumbers = lineNumbers;
+        for (String variableName: variableNames) {
+            variableTable.slotOf(variableName);
         }
-        return sInstance;
+        setFirstLineNumber(lineNumbers[0]);
+        setLastLineNumber(lineNumbers[lineNumbers.length - 1]);
+        jumpTable = new JumpTable(lineNumbers);
     }
 
-    public void initializeSILFileState(List<String> rawFileLines) {
-        // beautify the code
-        SILFileBeautifier.beautify(rawFileLines, codeLines);
-        // Retrieve the line numbers of the file
-        Object[] lineNumbers = codeLines.keySet().toArray();
-        setFirstLineNumber((Integer) lineNumbers[0]);
-        setLastLineNumber((Integer) lineNumbers[lineNumbers.length - 1]);
+    /**
+     * Replaces the instructions of a loaded program, used by the {@link ProgramOptimizer}.
+     * The jump targets of the new instructions must already refer to their new indices.
+     * @param optimizedInstructions the instructions that replace the loaded ones
+     */
+    void replaceInstructions(Instruction[] optimizedInstructions) {
+        instructions = optimizedInstructions;
+        lineNumbers = new int[instructions.length];
+        for (int index = 0; index < instructions.length; index++) {
+            lineNumbers[index] = instructions[index].lineNumber;
+        }
+        if (instructions.length > 0) {
+            setFirstLineNumber(lineNumbers[0]);
+            setLastLineNumber(lineNumbers[lineNumbers.length - 1]);
+        }
+        jumpTable = new JumpTable(lineNumbers);
+    }
+
+    /**
+     * Lexes the lines with lexical errors again to report their error messages
+     * @param errorLines start, end and source line number of every line with a lexical error
+     */
+    private void reportLexicalErrors(CharSequence source, List<Integer> errorLines) {
+        SILLexer lexer = new SILLexer();
+        for (int i = 0; i < errorLines.size(); i += 3) {
+            lexer.tokenize(source, errorLines.get(i), errorLines.get(i + 1), errorLines.get(i + 2));
+            loadErrors.add(lexer.getErrorMessage());
+        }
+    }
+
+    /**
+     * @return true when a line number is used by more than one line
+     */
+    private boolean reportDuplicateLineNumbers() {
+        int[] sortedLineNumbers = lineNumbers.clone();
+        Arrays.sort(sortedLineNumbers);
+        boolean hasDuplicates = false;
+        for (int i = 1; i < sortedLineNumbers.length; i++) {
+            if (sortedLineNumbers[i] == sortedLineNumbers[i - 1]
+                    && (i == 1 || sortedLineNumbers[i - 2] != sortedLineNumbers[i])) {
+                loadErrors.add("Duplicate line number "+sortedLineNumbers[i]);
+                hasDuplicates = true;
+            }
+        }
+        return hasDuplicates;
+    }
+
+    /**
+     * Resolves the target of every GOTO, GOSUB and IF...THEN GOTO to an instruction index,
+     * so that no line number lookup is needed while the program runs. Unknown targets are left at -1
+     * and reported by the {@link ProgramVerifier}.
+     */
+    private void resolveJumpTargets() {
+        for (Instruction instruction: instructions) {
+            if (instruction.opcode == Opcode.IF && instruction.thenInstruction != null) {
+                resolveJumpTarget(instruction.thenInstruction);
+            } else {
+                resolveJumpTarget(instruction);
+            }
+        }
+    }
+
+    private void resolveJumpTarget(Instruction instruction) {
+        if (instruction.opcode != Opcode.GOTO && instruction.opcode != Opcode.GOSUB)
+            return;
+        instruction.targetIndex = jumpTable.indexOf(instruction.targetLineNumber);
+    }
+
+    public Instruction[] getInstructions() {
+        return instructions;
+    }
+
+    /**
+     * @param lineNumber is a line number of the program
+     * @return index of the instruction at that line, or -1 when there is no such line
+     */
+    public int getInstructionIndex(int lineNumber) {
+        return jumpTable.indexOf(lineNumber);
+    }
+
+    public VariableTable getVariableTable() {
+        return variableTable;
+    }
+
+    public int[] getLineNumbers() {
+        return lineNumbers;
     }
 
-    public LinkedHashMap<Integer, String> getCodeLines() {
-        return codeLines;
+    public List<String> getLoadErrors() {
+        return loadErrors;
     }
 
-    public void setCurrentLineUnderExecution(Integer lineNumber) {
-        currentLineUnderExecution = lineNumber;
+    /**
+     * @return the SHA-256 hash of the source, null when it was not computed while loading
+     */
+    byte[] getSourceHash() {
+        return sourceHash;
     }
 
-    public Integer getCurrentLineUnderExecution() {
-        return currentLineUnderExecution;
+    void setSourceHash(byte[] sourceHash) {
+        this.sourceHash = sourceHash;
     }
 
     private void setFirstLineNumber(Integer firstLineNumber) {
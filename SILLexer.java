@@ -0,0 +1,181 @@
+import java.util.Arrays;
+
+/**
+ * Single pass lexer for SIL source lines.
+ * Each line is read once, character by character, and split into tokens that are stored in reusable
+ * primitive arrays, so tokenizing a line allocates nothing. Tokens refer to the source by position;
+ * keywords are matched case-insensitively, integer literals are converted while they are read.
+ */
+public class SILLexer {
+
+    private static final Keyword[] KEYWORDS = Keyword.values();
+
+    private CharSequence source;
+    private int lineStart;
+    private int sourceLineNumber;
+
+    private int tokenCount;
+    private TokenType[] types = new TokenType[32];
+    private int[] starts = new int[32];
+    private int[] ends = new int[32];
+    // line number / integer literal value, keyword ordinal or operator character
+    private int[] values = new int[32];
+
+    private String errorMessage;
+
+    /**
+     * Splits one source line into tokens
+     * @param source the text holding the line
+     * @param start position of the first character of the line
+     * @param end position after the last character of the line, without the line break
+     * @param sourceLineNumber physical line number in the file, used in error messages
+     * @return false when the line has a lexical error, see {@link #getErrorMessage()}
+     */
+    public boolean tokenize(CharSequence source, int start, int end, int sourceLineNumber) {
+        this.source = source;
+        this.lineStart = start;
+        this.sourceLineNumber = sourceLineNumber;
+        tokenCount = 0;
+        errorMessage = null;
+        int position = start;
+        while (position < end) {
+            char character = source.charAt(position);
+            if (character == ' ' || character == '\t' || character == '\r') {
+                position++;
+            } else if (character >= '0' && character <= '9') {
+                long value = 0;
+                int tokenStart = position;
+                while (position < end && (character = source.charAt(position)) >= '0' && character <= '9') {
+                    value = value * 10 + (character - '0');
+                    if (value > Integer.MAX_VALUE)
+                        return error("Number too large", tokenStart);
+                    position++;
+                }
+                addToken(tokenCount == 0 ? TokenType.LINE_NUMBER : TokenType.INTEGER_LITERAL, tokenStart, position,
+                        (int) value);
+            } else if (isIdentifierStart(character)) {
+                int tokenStart = position;
+                while (position < end && isIdentifierPart(source.charAt(position)))
+                    position++;
+                int keyword = matchKeyword(tokenStart, position);
+                if (keyword >= 0)
+                    addToken(TokenType.KEYWORD, tokenStart, position, keyword);
+                else
+                    addToken(TokenType.IDENTIFIER, tokenStart, position, 0);
+            } else if (character == '"') {
+                int tokenStart = position++;
+                while (position < end && source.charAt(position) != '"')
+                    position++;
+                if (position == end)
+                    return error("Unterminated string", tokenStart);
+                // the token covers the text between the quotes
+                addToken(TokenType.STRING_LITERAL, tokenStart + 1, position, 0);
+                position++;
+            } else if ("+-*/()=<>!,".indexOf(character) >= 0) {
+                addToken(TokenType.OPERATOR, position, position + 1, character);
+                position++;
+            } else {
+                return error("Unexpected character '"+character+"'", position);
+            }
+            if (tokenCount == 1 && types[0] != TokenType.LINE_NUMBER)
+                return error("Line number expected", starts[0]);
+        }
+        return true;
+    }
+
+    public int getTokenCount() {
+        return tokenCount;
+    }
+
+    public TokenType getType(int token) {
+        return types[token];
+    }
+
+    public int getStart(int token) {
+        return starts[token];
+    }
+
+    public int getEnd(int token) {
+        return ends[token];
+    }
+
+    public int getValue(int token) {
+        return values[token];
+    }
+
+    public boolean isKeyword(int token, Keyword keyword) {
+        return token < tokenCount && types[token] == TokenType.KEYWORD && values[token] == keyword.ordinal();
+    }
+
+    public boolean isOperator(int token, char operator) {
+        return token < tokenCount && types[token] == TokenType.OPERATOR && values[token] == operator;
+    }
+
+    /**
+     * @return column of the token within its line, starting at 1
+     */
+    public int getColumn(int token) {
+        return starts[token] - lineStart + 1;
+    }
+
+    public CharSequence getSource() {
+        return source;
+    }
+
+    /**
+     * @return the text of a token, creates a String so it is meant for rare cases such as string literals
+     */
+    public String getText(int token) {
+        return source.subSequence(starts[token], ends[token]).toString();
+    }
+
+    public int getSourceLineNumber() {
+        return sourceLineNumber;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    private boolean error(String message, int position) {
+        errorMessage = "Lexical error at line "+sourceLineNumber+" column "+(position - lineStart + 1)+": "+message;
+        return false;
+    }
+
+    private void addToken(TokenType type, int start, int end, int value) {
+        if (tokenCount == types.length) {
+            types = Arrays.copyOf(types, tokenCount * 2);
+            starts = Arrays.copyOf(starts, tokenCount * 2);
+            ends = Arrays.copyOf(ends, tokenCount * 2);
+            values = Arrays.copyOf(values, tokenCount * 2);
+        }
+        types[tokenCount] = type;
+        starts[tokenCount] = start;
+        ends[tokenCount] = end;
+        values[tokenCount] = value;
+        tokenCount++;
+    }
+
+    private int matchKeyword(int start, int end) {
+        for (Keyword keyword: KEYWORDS) {
+            String name = keyword.name();
+            if (name.length() != end - start)
+                continue;
+            int i = 0;
+            while (i < name.length() && Character.toUpperCase(source.charAt(start + i)) == name.charAt(i))
+                i++;
+            if (i == name.length())
+                return keyword.ordinal();
+        }
+        return -1;
+    }
+
+    static boolean isIdentifierStart(char character) {
+        return (character >= 'a' && character <= 'z') || (character >= 'A' && character <= 'Z')
+                || character == '_' || character == '$';
+    }
+
+    static boolean isIdentifierPart(char character) {
+        return isIdentifierStart(character) || (character >= '0' && character <= '9');
+    }
+}
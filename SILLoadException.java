@@ -0,0 +1,21 @@
+import java.util.List;
+
+/**
+ * Thrown when a SIL program cannot be loaded because of load errors, e.g. a jump to a line that does not exist.
+ * The message holds all of the errors, one per line.
+ */
+public class SILLoadException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<String> errors;
+
+    public SILLoadException(List<String> errors) {
+        super(String.join(System.lineSeparator(), errors));
+        this.errors = List.copyOf(errors);
+    }
+
+    public List<String> getErrors() {
+        return errors;
+    }
+}
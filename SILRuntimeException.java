@@ -0,0 +1,12 @@
+/**
+ * Thrown when a SIL program fails while it is being executed, e.g. a stack underflow.
+ * The interpreter reports the message together with the line under execution and stops the program.
+ */
+public class SILRuntimeException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public SILRuntimeException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,11 @@
+/**
+ * Kind of a token produced by the {@link SILLexer}
+ */
+enum TokenType {
+    LINE_NUMBER,
+    KEYWORD,
+    IDENTIFIER,
+    INTEGER_LITERAL,
+    OPERATOR,
+    STRING_LITERAL
+}
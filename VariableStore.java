@@ -0,0 +1,75 @@
+import java.util.Arrays;
+
+/**
+ * Register file holding the variables of a running program.
+ * Values live in a primitive int array indexed by the slot assigned in the {@link VariableTable},
+ * and the declared / initialized state of each slot is kept in two bitsets.
+ */
+public class VariableStore {
+
+    // value of a variable that has been declared but not initialized yet
+    public static final int UNINITIALIZED_VALUE = Integer.MIN_VALUE;
+
+    final int[] values;
+    private final long[] declared;
+    private final long[] initialized;
+
+    public VariableStore(int size) {
+        values = new int[size];
+        declared = new long[(size + 63) >>> 6];
+        initialized = new long[(size + 63) >>> 6];
+    }
+
+    /**
+     * Restores the variables saved in a {@link Checkpoint}
+     */
+    VariableStore(int[] values, long[] declared, long[] initialized) {
+        this.values = values;
+        this.declared = declared;
+        this.initialized = initialized;
+    }
+
+    public void declare(int slot) {
+        values[slot] = UNINITIALIZED_VALUE;
+        declared[slot >>> 6] |= 1L << slot;
+        initialized[slot >>> 6] &= ~(1L << slot);
+    }
+
+    public boolean isDeclared(int slot) {
+        return (declared[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    public boolean isInitialized(int slot) {
+        return (initialized[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    public int get(int slot) {
+        return values[slot];
+    }
+
+    public void set(int slot, int value) {
+        values[slot] = value;
+        initialized[slot >>> 6] |= 1L << slot;
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    long[] declaredBits() {
+        return declared;
+    }
+
+    long[] initializedBits() {
+        return initialized;
+    }
+
+    /**
+     * Forgets every variable so that the program can be run again
+     */
+    public void reset() {
+        Arrays.fill(values, 0);
+        Arrays.fill(declared, 0L);
+        Arrays.fill(initialized, 0L);
+    }
+}
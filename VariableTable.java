@@ -0,0 +1,79 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Assigns every variable name used by a program a slot number at load time.
+ * The interpreter stores variables in arrays indexed by slot, so no name lookup happens while executing.
+ * Names can be looked up straight from the source text, a String is only created the first time a name is seen.
+ */
+public class VariableTable {
+
+    private final List<String> names = new ArrayList<>();
+    // open addressing hash table holding slot + 1 per entry, 0 marks a free entry
+    private int[] table = new int[64];
+
+    /**
+     * @param name is the variable name
+     * @return the slot of the variable, a new slot is assigned the first time a name is seen
+     */
+    public int slotOf(String name) {
+        return slotOf(name, 0, name.length());
+    }
+
+    /**
+     * @param source text holding the variable name
+     * @param start position of the first character of the name
+     * @param end position after the last character of the name
+     * @return the slot of the variable, a new slot is assigned the first time a name is seen
+     */
+    public int slotOf(CharSequence source, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + source.charAt(i);
+        }
+        int mask = table.length - 1;
+        int index = (hash ^ (hash >>> 16)) & mask;
+        while (table[index] != 0) {
+            int slot = table[index] - 1;
+            if (matches(names.get(slot), source, start, end))
+                return slot;
+            index = (index + 1) & mask;
+        }
+        int slot = names.size();
+        names.add(source.subSequence(start, end).toString());
+        table[index] = slot + 1;
+        if (names.size() * 2 > table.length)
+            rehash();
+        return slot;
+    }
+
+    public String nameOf(int slot) {
+        return names.get(slot);
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    private void rehash() {
+        table = new int[table.length * 2];
+        int mask = table.length - 1;
+        for (int slot = 0; slot < names.size(); slot++) {
+            int hash = names.get(slot).hashCode();
+            int index = (hash ^ (hash >>> 16)) & mask;
+            while (table[index] != 0)
+                index = (index + 1) & mask;
+            table[index] = slot + 1;
+        }
+    }
+
+    private static boolean matches(String name, CharSequence source, int start, int end) {
+        if (name.length() != end - start)
+            return false;
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != source.charAt(start + i))
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,50 @@
+package jinterpreter.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of a whole run as the command line does it: map, lex, decode and run the program.
+ * Sample time mode reports the latency distribution with its percentiles.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EndToEndBenchmark {
+
+    @Param({"goto_loop.sil", "gosub_chain.sil", "expressions.sil", "print_heavy.sil", "generated:100000"})
+    public String program;
+
+    @Param({"INTERPRETER", "COMPILED"})
+    public Engine engine;
+
+    private File file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = program.startsWith("generated:") ? SilInterpreter.generatedFile(Integer.parseInt(program.substring(10)))
+                : SilInterpreter.corpusFile(program);
+    }
+
+    @Benchmark
+    public int parseAndRun() {
+        return SilInterpreter.parse(SilInterpreter.newParser(engine), file);
+    }
+}
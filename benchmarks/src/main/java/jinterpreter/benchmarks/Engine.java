@@ -0,0 +1,11 @@
+package jinterpreter.benchmarks;
+
+/**
+ * The ways a loaded program can be run
+ */
+public enum Engine {
+    // the dispatch loop of FileParser
+    INTERPRETER,
+    // JVM bytecode generated by BytecodeCompiler
+    COMPILED
+}
@@ -0,0 +1,62 @@
+package jinterpreter.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Runs already loaded programs of the corpus. Besides the runs per second the instructions counter reports
+ * the SIL instructions executed per second, counted once per program with the profiler.
+ * The compiled engine translates the program to bytecode on every run, as the command line does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExecutionBenchmark {
+
+    @Param({"goto_loop.sil", "gosub_chain.sil", "expressions.sil", "print_heavy.sil"})
+    public String program;
+
+    @Param({"INTERPRETER", "COMPILED"})
+    public Engine engine;
+
+    private Object silFile;
+    private long instructionsPerRun;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        File file = SilInterpreter.corpusFile(program);
+        silFile = SilInterpreter.load(file);
+        instructionsPerRun = SilInterpreter.countInstructions(silFile);
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long instructions;
+    }
+
+    @Benchmark
+    public int run(Counters counters) {
+        int exitStatus = SilInterpreter.execute(SilInterpreter.newParser(engine), silFile);
+        counters.instructions += instructionsPerRun;
+        return exitStatus;
+    }
+}
@@ -0,0 +1,51 @@
+package jinterpreter.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to lex and decode a program, from the mapped source file to a loaded SILFile.
+ * Run with -prof gc to see the allocation rate of the loader.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoadBenchmark {
+
+    /**
+     * A program of the corpus, or generated:N for a generated program of about N lines
+     */
+    @Param({"goto_loop.sil", "gosub_chain.sil", "expressions.sil", "print_heavy.sil", "generated:100000",
+            "generated:1000000"})
+    public String program;
+
+    private File file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = program.startsWith("generated:") ? SilInterpreter.generatedFile(Integer.parseInt(program.substring(10)))
+                : SilInterpreter.corpusFile(program);
+    }
+
+    @Benchmark
+    public Object load() {
+        return SilInterpreter.load(file);
+    }
+}
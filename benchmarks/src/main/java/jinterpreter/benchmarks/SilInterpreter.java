@@ -0,0 +1,198 @@
+package jinterpreter.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Access to the interpreter from the benchmarks.
+ * The interpreter classes live in the default package, which cannot be imported from a named package,
+ * and JMH does not accept benchmarks in the default package. The public API is therefore reached through
+ * method handles that are looked up once, their invocation cost is negligible next to loading or running
+ * a program.
+ */
+final class SilInterpreter {
+
+    private static final MethodHandle NEW_FILE_PARSER;
+    private static final MethodHandle NEW_SIL_FILE;
+    private static final MethodHandle MAP_SOURCE;
+    private static final MethodHandle INITIALIZE;
+    private static final MethodHandle IN_MEMORY_OUTPUT;
+    private static final MethodHandle INPUT_VALUES;
+    private static final MethodHandle SET_OUTPUT;
+    private static final MethodHandle SET_INPUT;
+    private static final MethodHandle ENABLE_BYTECODE_BACKEND;
+    private static final MethodHandle ENABLE_PROFILING;
+    private static final MethodHandle GET_PROFILER;
+    private static final MethodHandle TOTAL_COUNT;
+    private static final MethodHandle PARSE;
+    private static final MethodHandle EXECUTE;
+    private static final MethodHandle LOAD_ERRORS;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> fileParser = Class.forName("FileParser");
+            Class<?> silFile = Class.forName("SILFile");
+            Class<?> mappedSourceText = Class.forName("MappedSourceText");
+            Class<?> outputSink = Class.forName("OutputSink");
+            Class<?> inputSource = Class.forName("InputSource");
+            Class<?> profiler = Class.forName("Profiler");
+            NEW_FILE_PARSER = lookup.findConstructor(fileParser, MethodType.methodType(void.class));
+            NEW_SIL_FILE = lookup.findConstructor(silFile, MethodType.methodType(void.class));
+            MAP_SOURCE = lookup.findStatic(mappedSourceText, "map", MethodType.methodType(mappedSourceText, File.class));
+            INITIALIZE = lookup.findVirtual(silFile, "initializeSILFileState",
+                    MethodType.methodType(void.class, CharSequence.class));
+            LOAD_ERRORS = lookup.findVirtual(silFile, "getLoadErrors", MethodType.methodType(java.util.List.class));
+            IN_MEMORY_OUTPUT = lookup.findStatic(outputSink, "inMemory", MethodType.methodType(outputSink));
+            INPUT_VALUES = lookup.findStatic(inputSource, "values", MethodType.methodType(inputSource, int[].class));
+            SET_OUTPUT = lookup.findVirtual(fileParser, "setOutput", MethodType.methodType(void.class, outputSink));
+            SET_INPUT = lookup.findVirtual(fileParser, "setInput", MethodType.methodType(void.class, inputSource));
+            ENABLE_BYTECODE_BACKEND = lookup.findVirtual(fileParser, "enableBytecodeBackend",
+                    MethodType.methodType(void.class));
+            ENABLE_PROFILING = lookup.findVirtual(fileParser, "enableProfiling",
+                    MethodType.methodType(void.class, int.class));
+            GET_PROFILER = lookup.findVirtual(fileParser, "getProfiler", MethodType.methodType(profiler));
+            TOTAL_COUNT = lookup.findVirtual(profiler, "getTotalCount", MethodType.methodType(long.class));
+            PARSE = lookup.findVirtual(fileParser, "parse", MethodType.methodType(int.class, File.class));
+            EXECUTE = lookup.findVirtual(fileParser, "execute",
+                    MethodType.methodType(int.class, silFile, String.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private SilInterpreter() {
+    }
+
+    /**
+     * Loads a program without running it
+     * @return the loaded SILFile
+     */
+    static Object load(File file) {
+        try {
+            Object silFile = NEW_SIL_FILE.invoke();
+            INITIALIZE.invoke(silFile, (CharSequence) MAP_SOURCE.invoke(file));
+            if (!((java.util.List<?>) LOAD_ERRORS.invoke(silFile)).isEmpty())
+                throw new IllegalStateException("Program has load errors: "+LOAD_ERRORS.invoke(silFile));
+            return silFile;
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Creates a parser printing into memory, the returned parser runs one program
+     * @param engine the engine that runs the program
+     */
+    static Object newParser(Engine engine) {
+        try {
+            Object parser = NEW_FILE_PARSER.invoke();
+            SET_OUTPUT.invoke(parser, IN_MEMORY_OUTPUT.invoke());
+            SET_INPUT.invoke(parser, INPUT_VALUES.invoke(new int[0]));
+            if (engine == Engine.COMPILED)
+                ENABLE_BYTECODE_BACKEND.invoke(parser);
+            return parser;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Loads and runs a program, as the command line does
+     * @return the exit status
+     */
+    static int parse(Object parser, File file) {
+        try {
+            return (int) PARSE.invoke(parser, file);
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Runs a loaded program
+     * @return the exit status
+     */
+    static int execute(Object parser, Object silFile) {
+        try {
+            return (int) EXECUTE.invoke(parser, silFile, "benchmark");
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Runs a loaded program once under the profiler
+     * @return the number of instructions the program executes
+     */
+    static long countInstructions(Object silFile) {
+        try {
+            Object parser = newParser(Engine.INTERPRETER);
+            ENABLE_PROFILING.invoke(parser, 0);
+            int exitStatus = execute(parser, silFile);
+            if (exitStatus != 0)
+                throw new IllegalStateException("Program failed with exit status "+exitStatus);
+            return (long) TOTAL_COUNT.invoke(GET_PROFILER.invoke(parser));
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Copies a program of the corpus out of the benchmark jar, the loader maps files from disk
+     * @param name file name of the program in the corpus
+     */
+    static File corpusFile(String name) throws IOException {
+        File file = File.createTempFile(name, ".sil");
+        file.deleteOnExit();
+        try (InputStream in = SilInterpreter.class.getResourceAsStream("/corpus/" + name)) {
+            if (in == null)
+                throw new IOException("No program "+name+" in the corpus");
+            Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return file;
+    }
+
+    /**
+     * Writes a large straight line program, as produced by our code generators: blocks of arithmetic on a few
+     * variables, each block called as a subroutine
+     * @param lineCount approximate number of lines
+     */
+    static File generatedFile(int lineCount) throws IOException {
+        File file = File.createTempFile("generated-" + lineCount, ".sil");
+        file.deleteOnExit();
+        try (PrintWriter out = new PrintWriter(file)) {
+            int blockSize = 50;
+            int blockCount = Math.max(1, lineCount / (blockSize + 1));
+            int lineNumber = 10;
+            out.println(lineNumber + " INTEGER a, b, c, d");
+            for (int block = 0; block < blockCount; block++) {
+                lineNumber += 10;
+                out.println(lineNumber + " GOSUB " + (100_000_000 + block * 1000));
+            }
+            out.println((lineNumber + 10) + " PRINTLN a + b + c + d");
+            out.println((lineNumber + 20) + " END");
+            for (int block = 0; block < blockCount; block++) {
+                int blockLine = 100_000_000 + block * 1000;
+                for (int i = 0; i < blockSize; i++) {
+                    String variable = "abcd".substring(i % 4, i % 4 + 1);
+                    out.println((blockLine + i) + " LET " + variable + " = " + variable + " + (" + i
+                            + " * b - c) / 7 + " + block);
+                }
+                out.println((blockLine + blockSize) + " RET");
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,621 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.*;
+
+/**
+ * Frozen copy of the string interpreter this repository started from: FileParser, SILFile, SILFileBeautifier and
+ * StringUtils of the first commit. The {@link DifferentialFuzzer} uses it as an oracle that shares no code with the
+ * current lexer, decoder, expression compiler, verifier or input sources.
+ * Only what is needed to run it in-process was changed:
+ * <ul>
+ *     <li>INPUT reads lines from the given Scanner and output goes to the given stream instead of the console</li>
+ *     <li>END and the error exits throw {@link Exit} instead of calling System.exit</li>
+ *     <li>the SILFile singleton became one instance per interpreter and the beautifier fills its keyword list once</li>
+ * </ul>
+ * Its behaviour is only defined for programs that reach END without an error, see {@link #run(File)}.
+ * The nested classes keep their original names and hide the current classes of the same name.
+ * Do not fix this class, it has to keep behaving like the original.
+ */
+public class BaselineInterpreter {
+
+    private final Scanner consoleInputReader;
+    private final PrintStream out;
+    private SILFile silFile;
+
+    // Used to retrieve line number for execution after control is returned from a sub routine
+    private final Stack<Integer> subRoutineStack = new Stack<>();
+    // Simple integer stack to perform PUSH & POP integer operations to be supported by SIL Parser
+    private final Stack<Integer> operationalStack = new Stack<>();
+
+    private final List<String> rawFileLines = new ArrayList<>();
+    private final List<Integer> lineNumbers = new ArrayList<>();
+    private final HashMap<String, Variable> variables = new HashMap<>();
+
+    BaselineInterpreter(Scanner input, PrintStream output) {
+        consoleInputReader = input;
+        out = output;
+    }
+
+    /**
+     * Main parse function
+     * @param file the SIL file that needs to be parsed
+     */
+    public void parse(File file) {
+        try  {
+            silFile = new SILFile();
+            BufferedReader bufferedReader = new BufferedReader(new FileReader(file));
+            fetchRawFileLines(bufferedReader);
+            silFile.initializeSILFileState(rawFileLines);
+            lineNumbers.addAll(silFile.getCodeLines().keySet());
+            executeInstructions(silFile.getFirstLineNumber(), silFile.getLastLineNumber());
+        } catch (IOException e) {
+            out.println("Error while reading the file #file-error");
+        }
+    }
+
+    /**
+     * The function splits the whole file into lines and stores those lines as list of strings
+     * @param bufferedReader is the Buffered reader that has the file stored in it as String Buffer
+     */
+    private void fetchRawFileLines(BufferedReader bufferedReader) {
+        String line;
+        try {
+            while ((line = bufferedReader.readLine()) != null) {
+                rawFileLines.add(line);
+            }
+        } catch (IOException e) {
+            out.println("Error while reading the lines.");
+        }
+    }
+
+    /**
+     * Execute few lines of code of a specific code snippet
+     * @param startLineNumber is the line number of first instruction to be executed
+     * @param endLineNumber is the line number of last instruction to be executed
+     */
+    private void executeInstructions(Integer startLineNumber, Integer endLineNumber) {
+        silFile.getCodeLines().keySet().forEach(lineNumber -> {
+            if (lineNumber >= startLineNumber && lineNumber <= endLineNumber)
+                examineCodeLine(lineNumber);
+        });
+    }
+
+    /**
+     * The function examines each line of code to parse
+     */
+    private void examineCodeLine(Integer lineNumber) {
+        String code = silFile.getCodeLines().get(lineNumber);
+        String instruction = StringUtils.getFirstWordOfSentence(code);
+        switch (instruction) {
+            case "INTEGER" -> examineDeclarationInstruction(lineNumber, code); // DONE
+            case "INPUT" -> examineInputInstruction(lineNumber, code); // DONE
+            case "LET" -> examineInitializationInstruction(lineNumber, code); // DONE
+            case "PUSH" -> examinePushInstruction(lineNumber, code); // DONE
+            case "POP" -> examinePopInstruction(lineNumber, code); // DONE
+            case "IF" -> examineConditionalInstruction(lineNumber, code); // DONE
+            case "GOTO" -> examineGotoInstruction(lineNumber, code); // DONE
+            case "GOSUB" -> examineGoSubInstruction(lineNumber, code); //
+            case "PRINT", "PRINTLN" -> examinePrintInstruction(lineNumber, code); // ALMOST DONE
+            case "RET" -> examineReturnInstruction(lineNumber, code); //
+            case "END" -> throw new Exit(true); // DONE
+            default -> out.println("Syntax error occurred while parsing");
+        }
+    }
+
+    /**
+     * This function examines declaration instructions and creates variables for the encountered variable declarations
+     * @param lineNumber line number of declaration instruction
+     * @param codeLine instruction code line
+     */
+    private void examineDeclarationInstruction(Integer lineNumber, String codeLine) {
+        String instruction = StringUtils.deleteFirstWordFromSentence(codeLine);
+        String[] instructionVariables = instruction.split(",");
+        for (String variable: instructionVariables) {
+            if (StringUtils.isValidVariableName(variable))
+                variables.put(variable, new Variable(variable));
+            else {
+                out.println("Not a valid variable name at "+lineNumber);
+                throw new Exit(false);
+            }
+        }
+    }
+
+    /**
+     * This function helps to retrieve console input from the user.
+     * @param lineNumber line number of input instruction
+     * @param codeLine instruction code line
+     */
+    private void examineInputInstruction(Integer lineNumber, String codeLine) {
+        String instruction = StringUtils.deleteFirstWordFromSentence(codeLine);
+        String[] instructionVariables = instruction.split(",");
+        for (String variable: instructionVariables) {
+            if (!variables.containsKey(variable)) {
+                out.println(variable+" variable not declared at "+lineNumber);
+                throw new Exit(false);
+            }
+        }
+        // the input variables were successfully declared by this time
+        String consoleInput = consoleInputReader.nextLine();
+        if (!Objects.equals(consoleInput, "")) {
+            String[] inputs = consoleInput.split(" ");
+            if (inputs.length == instructionVariables.length) {
+                for (int i = 0; i < instructionVariables.length; i++) {
+                    try {
+                        Variable requiredVariable = variables.get(instructionVariables[i]);
+                        requiredVariable.value = Integer.parseInt(inputs[i]);
+                        requiredVariable.state = VariableState.INITIALIZED;
+                    } catch (NumberFormatException e) {
+                        out.println(e.getMessage());
+                        throw new Exit(false);
+                    }
+                }
+            } else {
+                out.println("Line "+lineNumber+" missing input value");
+                throw new Exit(false);
+            }
+        } else {
+            out.println("Line "+lineNumber+" missing input value");
+            throw new Exit(false);
+        }
+    }
+
+    /**
+     * This part of code handles the lines of code that deal with initialization i.e: which start with LET
+     * @param lineNumber is the line number of the initialization instruction
+     * @param code is a particular line of code
+     */
+    private void examineInitializationInstruction(Integer lineNumber, String code) {
+        String instruction = StringUtils.deleteFirstWordFromSentence(code);
+        String[] operands = instruction.split("=");
+        String variableBeingAssigned = operands[0];
+        if (!variables.containsKey(variableBeingAssigned)) {
+            out.println(variableBeingAssigned+" variable not declared at "+lineNumber);
+            throw new Exit(false);
+        } else if (operands.length > 2) {
+            out.println("Invalid initialization at "+lineNumber);
+            throw new Exit(false);
+        }
+        String expressionString = operands[1];
+        boolean hasOnlyDigits = expressionString.matches("[0-9]+");
+        if (hasOnlyDigits)
+            variables.get(variableBeingAssigned).value = Integer.parseInt(expressionString);
+        else
+            variables.get(variableBeingAssigned).value = evaluate(buildMathematicalExpressionForEvaluation(expressionString));
+        variables.get(variableBeingAssigned).state = VariableState.INITIALIZED;
+    }
+
+    /**
+     * Push the expression result on to the top of the operational stack
+     * @param lineNumber is the line number of the push instruction
+     * @param code is a particular line of code
+     */
+    private void examinePushInstruction(Integer lineNumber, String code) {
+        String instruction = StringUtils.deleteFirstWordFromSentence(code);
+        int instructionResult = evaluate(buildMathematicalExpressionForEvaluation(instruction));
+        operationalStack.push(instructionResult);
+    }
+
+    /**
+     * Pop the top of the stack and store it into the variable
+     * @param lineNumber is the line number of the push instruction
+     * @param code is a particular line of code
+     */
+    private void examinePopInstruction(Integer lineNumber, String code) {
+        String variableName = StringUtils.deleteFirstWordFromSentence(code);
+        if (variables.containsKey(variableName)) {
+            try {
+                variables.get(variableName).value = operationalStack.pop();
+                variables.get(variableName).state = VariableState.INITIALIZED;
+            } catch (EmptyStackException e) {
+                out.println(e.getMessage());
+                throw new Exit(false);
+            }
+        } else {
+            out.println(variableName+" not declared at line "+lineNumber);
+            throw new Exit(false);
+        }
+    }
+
+    private void examineConditionalInstruction(Integer lineNumber, String code) {
+        String codeWithoutIf = StringUtils.deleteFirstWordFromSentence(code).trim();
+        String[] conditionalClauses = codeWithoutIf.split("THEN");
+        String ifClause = conditionalClauses[0];
+        String thenClause = conditionalClauses[1];
+        String relationalOperator = ifClause.contains("<") ? "<" : (ifClause.contains(">") ? ">"
+                : (ifClause.contains("=") ? "=" : (ifClause.contains("!") ? "!" : "" )));
+        if (relationalOperator.equals("")) {
+            out.println("If clause doesn't have a valid relational operator at "+lineNumber);
+            throw new Exit(false);
+        }
+        String[] relationalOperands = ifClause.split(relationalOperator);
+        if (relationalOperands.length > 2) {
+            out.println("Invalid conditional statement at "+lineNumber);
+            throw new Exit(false);
+        }
+        if (computeExpressionResult(
+                relationalOperator,
+                evaluate(buildMathematicalExpressionForEvaluation(relationalOperands[0])),
+                evaluate(buildMathematicalExpressionForEvaluation(relationalOperands[1]))
+        )) {
+            thenClause = thenClause.trim();
+            String decisionWord = StringUtils.getFirstWordOfSentence(thenClause);
+            switch (decisionWord) {
+                case "PRINT", "PRINTLN" -> examinePrintInstruction(lineNumber, thenClause);
+                case "GOTO" -> examineGotoInstruction(lineNumber, thenClause);
+            }
+        }
+    }
+
+    private void examineGotoInstruction(Integer lineNumberOfGotoInstruction, String code) {
+        String lineNumber = StringUtils.deleteFirstWordFromSentence(code);
+        Integer gotoLineNumber = Integer.parseInt(lineNumber);
+        executeInstructions(gotoLineNumber, silFile.getLastLineNumber());
+    }
+
+    private void examineGoSubInstruction(Integer lineNumber, String code) {
+        Integer goSubLineNumber = Integer.parseInt(StringUtils.deleteFirstWordFromSentence(code));
+        int indexOfGoSubLine = lineNumbers.indexOf(lineNumber);
+        Integer nextLineToBeExecuted = lineNumbers.get(indexOfGoSubLine + 1);
+        subRoutineStack.push(nextLineToBeExecuted);
+        executeInstructions(goSubLineNumber, silFile.getLastLineNumber());
+    }
+
+    private void examineReturnInstruction(Integer lineNumber, String code) {
+        Integer lineNumberToBeResumed = subRoutineStack.pop();
+        executeInstructions(lineNumberToBeResumed, silFile.getLastLineNumber());
+    }
+
+    /**
+     * The function examines the print statements and parses them
+     * @param lineNumber is the instruction line to be printed
+     * @param code is the line to print
+     */
+    private void examinePrintInstruction(Integer lineNumber, String code) {
+        String decisionWord = StringUtils.getFirstWordOfSentence(code);
+        String instruction = StringUtils.deleteFirstWordFromSentence(code);
+        if (variables.containsKey(instruction)) {
+            Integer value = variables.get(instruction).value;
+            if (Objects.equals(decisionWord, "PRINT"))
+                out.print(value);
+            else
+                out.println(value);
+        } else {
+            if (!instruction.startsWith("\"")) {
+                int expressionResult = evaluate(buildMathematicalExpressionForEvaluation(instruction));
+                if (Objects.equals(decisionWord, "PRINT"))
+                    out.print(expressionResult);
+                else
+                    out.println(expressionResult);
+            } else {
+                String printableResult = instruction.replaceAll("\"", "");
+                if (Objects.equals(decisionWord, "PRINT"))
+                    out.print(printableResult);
+                else
+                    out.println(printableResult);
+            }
+        }
+    }
+
+    /**
+     * This function builds a numerical expression from a variable expression by retrieving the values of
+     * variables from the hashMap which we stored during initialization
+     * @param expression is the expression that has variables instead of numbers
+     * @return the numerical expression
+     */
+    private String buildMathematicalExpressionForEvaluation(String expression) {
+        StringBuilder mathExpressionBuilder = new StringBuilder();
+        StringBuilder variableNameBuilder = new StringBuilder();
+        for (int i = 0; i < expression.length(); i++) {
+            if (expression.charAt(i) == '+' || expression.charAt(i) == '-'
+                    || expression.charAt(i) == '*' || expression.charAt(i) == '/'
+                    || (expression.charAt(i) >= '0' && expression.charAt(i) <= '9')) {
+                retrieveVariableValueAndAppendToMathExpression(mathExpressionBuilder, variableNameBuilder);
+                mathExpressionBuilder.append(expression.charAt(i));
+            } else {
+                variableNameBuilder.append(expression.charAt(i));
+            }
+        }
+        retrieveVariableValueAndAppendToMathExpression(mathExpressionBuilder, variableNameBuilder);
+        return mathExpressionBuilder.toString();
+    }
+
+    private void retrieveVariableValueAndAppendToMathExpression(StringBuilder mathExpressionBuilder, StringBuilder variableNameBuilder) {
+        String variableName = variableNameBuilder.toString();
+        if (!(variableName.isBlank() || variableName.isEmpty())) {
+            if (variables.containsKey(variableName)) {
+                mathExpressionBuilder.append(variables.get(variableName).value.toString());
+                variableNameBuilder.delete(0, variableNameBuilder.length());
+            } else {
+                out.println(variableName+" variable not declared");
+                throw new Exit(false);
+            }
+        }
+    }
+
+    private Boolean computeExpressionResult(String relationalOperator, Integer leftOperand, Integer rightOperand) {
+        return switch (relationalOperator) {
+            case "<" -> leftOperand < rightOperand;
+            case ">" -> leftOperand > rightOperand;
+            case "=" -> Objects.equals(leftOperand, rightOperand);
+            default -> !Objects.equals(leftOperand, rightOperand);
+        };
+    }
+
+    /**
+     * This code for expression evaluation has been taken from Geeks for geeks website.
+     * The function is intended to evaluate an expression containing numbers and mathematical operators
+     * Link to the article: <a href="https://www.geeksforgeeks.org/expression-evaluation/">...</a>
+     * @param expression : It is the expression that needs to be evaluated by using a stack
+     * @return : The function returns an integer i.e: the result of the evaluated expression
+     */
+    public int evaluate(String expression)
+    {
+        char[] tokens = expression.toCharArray();
+        Stack<Integer> values = new Stack<>();
+        Stack<Character> ops = new Stack<>();
+        for (int i = 0; i < tokens.length; i++) {
+            if (tokens[i] == ' ')
+                continue;
+            if (tokens[i] >= '0' && tokens[i] <= '9') {
+                StringBuffer sBuffer = new StringBuffer();
+                while (i < tokens.length && tokens[i] >= '0' && tokens[i] <= '9')
+                    sBuffer.append(tokens[i++]);
+                values.push(Integer.parseInt(sBuffer.toString()));
+                i--;
+            }
+            else if (tokens[i] == '(')
+                ops.push(tokens[i]);
+            else if (tokens[i] == ')') {
+                while (ops.peek() != '(')
+                    values.push(applyOp(ops.pop(),
+                            values.pop(),
+                            values.pop()));
+                ops.pop();
+            } else if (tokens[i] == '+' || tokens[i] == '-' || tokens[i] == '*' || tokens[i] == '/') {
+                while (!ops.empty() && hasPrecedence(tokens[i], ops.peek()))
+                    values.push(applyOp(ops.pop(), values.pop(), values.pop()));
+                ops.push(tokens[i]);
+            }
+        }
+        while (!ops.empty())
+            values.push(applyOp(ops.pop(), values.pop(), values.pop()));
+        return values.pop();
+    }
+    public boolean hasPrecedence(char op1, char op2) {
+        if (op2 == '(' || op2 == ')')
+            return false;
+        if ((op1 == '*' || op1 == '/') && (op2 == '+' || op2 == '-'))
+            return false;
+        else
+            return true;
+    }
+
+    public int applyOp(char op, int b, int a) {
+        switch (op) {
+            case '+':
+                return a + b;
+            case '-':
+                return a - b;
+            case '*':
+                return a * b;
+            case '/':
+                if (b == 0)
+                    throw new UnsupportedOperationException("Cannot divide by zero");
+                return a / b;
+        }
+        return 0;
+    }
+
+    /**
+     * Runs a program
+     * @param file the SIL source file
+     * @return true when the program reached END, false when it stopped with an error or ran past its last line
+     */
+    public boolean run(File file) {
+        try {
+            parse(file);
+            // jumps are recursive calls here, without END the lines after a jump run once it returns
+            return false;
+        } catch (Exit exit) {
+            return exit.isEnd;
+        } catch (RuntimeException | StackOverflowError e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the value of every declared variable, by name
+     */
+    public Map<String, Integer> getVariables() {
+        Map<String, Integer> values = new TreeMap<>();
+        variables.forEach((name, variable) -> values.put(name, variable.value));
+        return values;
+    }
+
+    private static class Variable {
+        String name;
+        Integer value;
+        VariableState state;
+
+        Variable(String name) {
+            this.name = name;
+            value = Integer.MIN_VALUE;
+            state = VariableState.DECLARED;
+        }
+    }
+
+    private enum VariableState {
+        DECLARED,
+        INITIALIZED
+    }
+
+    /**
+     * Thrown where the original interpreter called System.exit(0)
+     */
+    private static final class Exit extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        // set for END, cleared when the program stopped because of an error
+        private final boolean isEnd;
+
+        Exit(boolean isEnd) {
+            super(null, null, false, false);
+            this.isEnd = isEnd;
+        }
+    }
+
+    /**
+     * This class is used to store the content and properties of input instructions file.
+     * Class stores code lines, last line number, current line under execution
+     */
+    private static class SILFile {
+
+        private final LinkedHashMap<Integer, String> codeLines = new LinkedHashMap<>();
+        private Integer currentLineUnderExecution;
+        private Integer firstLineNumber;
+        private Integer lastLineNumber;
+
+        public void initializeSILFileState(List<String> rawFileLines) {
+            // beautify the code
+            SILFileBeautifier.beautify(rawFileLines, codeLines);
+            // Retrieve the line numbers of the file
+            Object[] lineNumbers = codeLines.keySet().toArray();
+            setFirstLineNumber((Integer) lineNumbers[0]);
+            setLastLineNumber((Integer) lineNumbers[lineNumbers.length - 1]);
+        }
+
+        public LinkedHashMap<Integer, String> getCodeLines() {
+            return codeLines;
+        }
+
+        public void setCurrentLineUnderExecution(Integer lineNumber) {
+            currentLineUnderExecution = lineNumber;
+        }
+
+        public Integer getCurrentLineUnderExecution() {
+            return currentLineUnderExecution;
+        }
+
+        private void setFirstLineNumber(Integer firstLineNumber) {
+            this.firstLineNumber = firstLineNumber;
+        }
+
+        public Integer getFirstLineNumber() {
+            return firstLineNumber;
+        }
+
+        private void setLastLineNumber(Integer lineNumber) {
+            lastLineNumber = lineNumber;
+        }
+
+        public Integer getLastLineNumber() {
+            return lastLineNumber;
+        }
+    }
+
+    private static class SILFileBeautifier {
+
+        private static final List<String> rejectionArray = new ArrayList<>();
+        private static final String end  = "END";
+        private static final String ret = "RET";
+        private static final String print = "PRINT";
+        private static final String println = "PRINTLN";
+        private static final String iF = "IF";
+
+        static {
+            initializeRejectionArray();
+        }
+
+        private static void initializeRejectionArray() {
+            rejectionArray.add("PRINT");
+            rejectionArray.add("PRINTLN");
+            rejectionArray.add("IF");
+        }
+
+        public static void beautify(List<String> rawFileLines,
+                                    LinkedHashMap<Integer, String> beautifiedFileLines) throws NumberFormatException {
+            for (String rawFileLine: rawFileLines) {
+                Integer lineNumber = fetchLineNumber(rawFileLine);
+                String beautifiedLine = beautifyCodeLine(StringUtils.deleteFirstWordFromSentence(rawFileLine));
+                beautifiedFileLines.put(lineNumber, beautifiedLine);
+            }
+        }
+
+        public static Integer fetchLineNumber(String rawFileLine) throws NumberFormatException {
+            String lineNumberString = StringUtils.getFirstWordOfSentence(rawFileLine);
+            return Integer.parseInt(lineNumberString);
+        }
+
+        public static String beautifyCodeLine(String codeWithoutLineNumber) {
+            String instruction = StringUtils.getFirstWordOfSentence(codeWithoutLineNumber).toUpperCase();
+            if (instruction.equals(end) || instruction.equals(ret)) {
+                return instruction.toUpperCase();
+            }
+            String codeWithoutInstruction = StringUtils.deleteFirstWordFromSentence(codeWithoutLineNumber);
+            StringBuilder enhancedCodeBuilder = new StringBuilder();
+            enhancedCodeBuilder.append(instruction);
+            enhancedCodeBuilder.append(" ");
+            char[] codeCharacters = codeWithoutInstruction.toCharArray();
+            if (!rejectionArray.contains(instruction)) {
+                for (char codeCharacter: codeCharacters) {
+                    if (codeCharacter != ' ') {
+                        enhancedCodeBuilder.append(codeCharacter);
+                    }
+                }
+            } else {
+                if (instruction.equals(iF)) {
+                    String[] conditionalClauses = codeWithoutInstruction.split("THEN");
+                    for (char codeCharacter: conditionalClauses[0].toCharArray()) {
+                        if (codeCharacter != ' ') {
+                            enhancedCodeBuilder.append(codeCharacter);
+                        }
+                    }
+                    enhancedCodeBuilder.append("THEN");
+                    enhancedCodeBuilder.append(StringUtils.getFirstWordOfSentence(conditionalClauses[1].trim()).toUpperCase());
+                    enhancedCodeBuilder.append(' ');
+                    enhancedCodeBuilder.append(StringUtils.deleteFirstWordFromSentence(conditionalClauses[1].trim()));
+                } else if (instruction.equals(print) || instruction.equals(println)) {
+                    boolean isPrintable = false;
+                    for (char codeCharacter: codeCharacters) {
+                        if (codeCharacter == '\"')
+                            isPrintable = !isPrintable;
+                        if (isPrintable) {
+                            enhancedCodeBuilder.append(codeCharacter);
+                        } else {
+                            if (codeCharacter != ' ')
+                                enhancedCodeBuilder.append(codeCharacter);
+                        }
+                    }
+                }
+            }
+            return enhancedCodeBuilder.toString();
+        }
+    }
+
+    private static class StringUtils {
+
+        public static String getFirstWordOfSentence(String sentence) {
+            return sentence.split(" ")[0];
+        }
+
+        public static Boolean isValidVariableName(String variableName) {
+            char firstLetter = variableName.charAt(0);
+            Boolean isVariableFirstLetterAppropriate = ((firstLetter >= 'a' && firstLetter <= 'z') ||
+                    (firstLetter >= 'A' && firstLetter <= 'Z') || firstLetter == '_' || firstLetter == '$');
+            Boolean areVariableLettersValid = variableName.matches("[a-zA-Z0-9_$]+");
+            return isVariableFirstLetterAppropriate && areVariableLettersValid;
+        }
+
+        public static String deleteFirstWordFromSentence(String actualString) {
+            int wordStartPosition = getFirstWordOfSentence(actualString).length();
+            while (actualString.charAt(wordStartPosition) == ' ') { // checks for multiple spaces after first word
+                wordStartPosition += 1;
+            }
+            return actualString.substring(wordStartPosition);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CheckpointTest {
+
+    @TempDir
+    Path directory;
+
+    private static Checkpoint checkpoint(byte[] programHash) {
+        return new Checkpoint(programHash, true, 4, 2, 123_456_789_012L, new int[] {7, -3}, new long[] {3},
+                new long[] {1}, new int[] {1, 2, 3}, new int[] {4}, "pending".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] hash(int seed) {
+        byte[] hash = new byte[32];
+        Arrays.fill(hash, (byte) seed);
+        return hash;
+    }
+
+    @Test
+    void readsBackTheStateItWrote() throws IOException {
+        File file = directory.resolve("program.checkpoint").toFile();
+        checkpoint(hash(1)).write(file);
+        Checkpoint checkpoint = Checkpoint.read(file);
+        assertArrayEquals(hash(1), checkpoint.programHash);
+        assertTrue(checkpoint.isOptimized);
+        assertEquals(4, checkpoint.instructionCount);
+        assertEquals(2, checkpoint.programCounter);
+        assertEquals(123_456_789_012L, checkpoint.getExecutedCount());
+        assertArrayEquals(new int[] {7, -3}, checkpoint.values);
+        assertArrayEquals(new long[] {3}, checkpoint.declared);
+        assertArrayEquals(new long[] {1}, checkpoint.initialized);
+        assertArrayEquals(new int[] {1, 2, 3}, checkpoint.operandStack);
+        assertArrayEquals(new int[] {4}, checkpoint.subroutineStack);
+        assertEquals("pending", new String(checkpoint.pendingOutput, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void replacesThePreviousCheckpoint() throws IOException {
+        File file = directory.resolve("program.checkpoint").toFile();
+        checkpoint(hash(1)).write(file);
+        checkpoint(hash(2)).write(file);
+        assertArrayEquals(hash(2), Checkpoint.read(file).programHash);
+        try (var files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    void belongsOnlyToTheProgramItWasTakenFrom() {
+        SILFile silFile = new SILFile();
+        silFile.initializeSILFileState("10 INTEGER a, b\n20 INPUT a\n30 PRINTLN a + b\n40 END\n");
+        Checkpoint checkpoint = checkpoint(hash(1));
+        assertTrue(checkpoint.belongsTo(hash(1), true, silFile));
+        assertFalse(checkpoint.belongsTo(hash(2), true, silFile));
+        assertFalse(checkpoint.belongsTo(hash(1), false, silFile));
+        SILFile otherFile = new SILFile();
+        otherFile.initializeSILFileState("10 INTEGER a, b\n20 END\n");
+        assertFalse(checkpoint.belongsTo(hash(1), true, otherFile));
+    }
+
+    @Test
+    void rejectsCorruptFiles() throws IOException {
+        File file = directory.resolve("program.checkpoint").toFile();
+        checkpoint(hash(1)).write(file);
+        byte[] bytes = Files.readAllBytes(file.toPath());
+
+        byte[] flipped = bytes.clone();
+        flipped[bytes.length - 2] ^= 0x01;
+        assertRejected(file, flipped, "Corrupt checkpoint");
+        assertRejected(file, Arrays.copyOf(bytes, bytes.length - 1), "Corrupt checkpoint");
+        assertRejected(file, Arrays.copyOf(bytes, 6), "Not a checkpoint of this version");
+        byte[] otherVersion = bytes.clone();
+        otherVersion[7]++;
+        assertRejected(file, otherVersion, "Not a checkpoint of this version");
+    }
+
+    private static void assertRejected(File file, byte[] bytes, String message) throws IOException {
+        Files.write(file.toPath(), bytes);
+        assertEquals(message, assertThrows(IOException.class, () -> Checkpoint.read(file)).getMessage());
+    }
+}
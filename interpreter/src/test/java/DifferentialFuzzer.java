@@ -0,0 +1,822 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Differential fuzzing harness for the execution modes of the interpreter.
+ * Generates random SIL programs that always terminate, runs each of them in-process through the reference
+ * interpreter (plain dispatch loop, optimizer off) and through every other engine, and compares the exit status,
+ * the output and the final variable values. A program on which an engine disagrees is shrunk to a minimal
+ * reproducer, which is printed and written next to its input values.
+ *
+ * The reference shares its lexer, decoder, expression compiler, verifier and input sources with every engine, so
+ * half of the programs are generated in the subset of SIL the original string interpreter handles: letter-only
+ * variable names, no parentheses, no unary minus and no != comparison. Those programs also run through the
+ * {@link BaselineInterpreter}, a frozen copy of that interpreter, and the reference has to agree with it whenever
+ * the baseline reaches END without an error.
+ *
+ * Usage: java DifferentialFuzzer [--seed=N] [--programs=N] [--out=DIR]
+ */
+public class DifferentialFuzzer {
+
+    // every run of a program gets this many input values at most
+    private static final int MAX_INPUT_COUNT = 8;
+
+    /**
+     * Execution modes compared with the reference interpreter
+     */
+    enum Engine {
+        OPTIMIZED,
+        COMPILED,
+        OPTIMIZED_COMPILED,
+        // profiler and execution trace, both run in the instrumented dispatch loop
+        INSTRUMENTED,
+        // slices of a few instructions as run by the ProgramScheduler
+        SLICED,
+        // loaded once through a ProgramCache file
+        CACHED,
+        // a LoadedProgram as run by the BatchRunner, final variables are not observable
+        BATCH,
+        // the ProgramScheduler itself, final variables are not observable
+        SCHEDULED
+    }
+
+    /**
+     * What a run of a program produced
+     * @param variables the final value of every variable, null when the engine does not expose them
+     */
+    record Outcome(int exitStatus, String output, String variables) {
+
+        /**
+         * @return a description of the first difference to the reference outcome, null when there is none
+         */
+        String differenceTo(Outcome reference) {
+            if (exitStatus != reference.exitStatus)
+                return "exit status "+exitStatus+" instead of "+reference.exitStatus;
+            if (!output.equals(reference.output))
+                return "output differs:\n--- expected\n"+reference.output+"--- actual\n"+output;
+            if (variables != null && reference.variables != null && !variables.equals(reference.variables))
+                return "variables "+variables+" instead of "+reference.variables;
+            return null;
+        }
+    }
+
+    private final File sourceFile;
+    private final File cacheDirectory;
+    private final ProgramScheduler scheduler = new ProgramScheduler(1, 3);
+    private final Random random;
+    // programs whose outcome was compared with the baseline interpreter
+    private int baselineCheckCount;
+
+    DifferentialFuzzer(File workDirectory, long seed) {
+        this.sourceFile = new File(workDirectory, "fuzz.sil");
+        this.cacheDirectory = new File(workDirectory, "cache");
+        this.random = new Random(seed);
+    }
+
+    public static void main(String[] args) throws IOException {
+        long seed = System.nanoTime();
+        int programCount = 1000;
+        File outputDirectory = new File(".");
+        for (String argument: args) {
+            if (argument.startsWith("--seed=")) {
+                seed = Long.parseLong(argument.substring("--seed=".length()));
+            } else if (argument.startsWith("--programs=")) {
+                programCount = Integer.parseInt(argument.substring("--programs=".length()));
+            } else if (argument.startsWith("--out=")) {
+                outputDirectory = new File(argument.substring("--out=".length()));
+            } else {
+                System.err.println("Unknown option "+argument);
+                System.exit(2);
+            }
+        }
+        // engines report on standard error, e.g. programs that cannot be compiled or traces of failed programs
+        PrintStream standardError = System.err;
+        System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+        int failureCount;
+        try {
+            failureCount = fuzz(seed, programCount, outputDirectory, System.out);
+        } finally {
+            System.setErr(standardError);
+        }
+        if (failureCount > 0)
+            System.exit(1);
+    }
+
+    /**
+     * Generates programs and compares every engine with the reference on each of them
+     * @param seed seed of the random programs and inputs, the same seed generates the same programs
+     * @param programCount number of programs generated
+     * @param outputDirectory directory the reproducers of programs with differences are written to
+     * @param report receives the differences found and a summary
+     * @return the number of programs an engine disagreed on
+     */
+    static int fuzz(long seed, int programCount, File outputDirectory, PrintStream report) throws IOException {
+        File workDirectory = Files.createTempDirectory("sil-fuzz").toFile();
+        DifferentialFuzzer fuzzer = new DifferentialFuzzer(workDirectory, seed);
+        int failureCount = 0;
+        try {
+            report.println("Seed "+seed+", "+programCount+" programs, engines "+Arrays.toString(Engine.values()));
+            for (int i = 0; i < programCount; i++) {
+                GeneratedProgram program = GeneratedProgram.generate(fuzzer.random, fuzzer.random.nextBoolean());
+                int[] inputs = fuzzer.generateInputs(program.isBaselineSubset);
+                String failure = fuzzer.findDifference(program, inputs);
+                if (failure == null)
+                    continue;
+                failureCount++;
+                GeneratedProgram reproducer = fuzzer.shrink(program, inputs);
+                String source = reproducer.toSource();
+                File reproducerFile = new File(outputDirectory, "fuzz-"+seed+"-"+i+".sil");
+                Files.writeString(reproducerFile.toPath(), source);
+                // one value per line, every generated INPUT reads one variable
+                Files.writeString(new File(outputDirectory, reproducerFile.getName()+".input").toPath(),
+                        Arrays.stream(inputs).mapToObj(value -> value + System.lineSeparator())
+                                .collect(Collectors.joining()));
+                report.println("Program "+i+": "+failure);
+                report.println("Reduced from "+program.toSource().lines().count()+" to "+source.lines().count()
+                        +" lines, written to "+reproducerFile+":");
+                report.print(source);
+                report.println("Inputs: "+Arrays.toString(inputs));
+            }
+            report.println(programCount+" programs, "+fuzzer.baselineCheckCount
+                    +" checked against the baseline interpreter, "+failureCount+" with differences");
+        } finally {
+            fuzzer.scheduler.shutdown();
+            try (Stream<Path> paths = Files.walk(workDirectory.toPath())) {
+                paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+        return failureCount;
+    }
+
+    /**
+     * @param isBaselineSubset whether the values are never negative, the baseline interpreter cannot compute with
+     *                         negative values
+     */
+    private int[] generateInputs(boolean isBaselineSubset) {
+        // now and then a run gets fewer values than it reads, to compare how missing input is reported
+        int count = random.nextInt(10) == 0 ? random.nextInt(MAX_INPUT_COUNT) : MAX_INPUT_COUNT;
+        int[] inputs = new int[count];
+        for (int i = 0; i < count; i++) {
+            inputs[i] = isBaselineSubset ? random.nextInt(21) : random.nextInt(41) - 20;
+        }
+        return inputs;
+    }
+
+    /**
+     * Runs the program through the reference interpreter and every engine
+     * @return a description of the first engine that disagrees with the reference, null when all agree
+     */
+    String findDifference(GeneratedProgram program, int[] inputs) throws IOException {
+        Files.writeString(sourceFile.toPath(), program.toSource());
+        Outcome reference = runReference(inputs);
+        if (program.isBaselineSubset) {
+            Outcome baseline = runBaseline(inputs);
+            if (baseline != null) {
+                baselineCheckCount++;
+                String difference = reference.differenceTo(baseline);
+                if (difference != null)
+                    return "reference interpreter disagrees with the baseline interpreter: "+difference;
+            }
+        }
+        for (Engine engine: Engine.values()) {
+            Outcome outcome;
+            try {
+                outcome = run(engine, inputs);
+            } catch (RuntimeException e) {
+                return engine+" failed with "+e;
+            }
+            String difference = outcome.differenceTo(reference);
+            if (difference != null)
+                return engine+": "+difference;
+        }
+        return null;
+    }
+
+    private Outcome runReference(int[] inputs) {
+        FileParser parser = newParser(inputs);
+        return outcome(parser, parser.parse(sourceFile));
+    }
+
+    /**
+     * Runs the program through the frozen baseline interpreter, which reads one line per INPUT
+     * @return the outcome, null when the baseline stopped with an error and its behaviour is not defined
+     */
+    private Outcome runBaseline(int[] inputs) {
+        String inputLines = Arrays.stream(inputs).mapToObj(value -> value + "\n").collect(Collectors.joining());
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        BaselineInterpreter interpreter = new BaselineInterpreter(new Scanner(inputLines),
+                new PrintStream(output, false, Charset.defaultCharset()));
+        if (!interpreter.run(sourceFile))
+            return null;
+        return new Outcome(FileParser.EXIT_SUCCESS, output.toString(Charset.defaultCharset()),
+                describeVariables(interpreter.getVariables()));
+    }
+
+    private Outcome run(Engine engine, int[] inputs) throws IOException {
+        FileParser parser = newParser(inputs);
+        switch (engine) {
+            case OPTIMIZED -> parser.enableOptimizer(false);
+            case COMPILED -> parser.enableBytecodeBackend();
+            case OPTIMIZED_COMPILED -> {
+                parser.enableOptimizer(false);
+                parser.enableBytecodeBackend();
+            }
+            case INSTRUMENTED -> {
+                parser.enableProfiling(3);
+                parser.enableTracing(16);
+            }
+            case SLICED -> {
+                return runSliced(parser);
+            }
+            case CACHED -> {
+                // the first load writes the cache file, the second one reads it
+                parser.setProgramCache(new ProgramCache(cacheDirectory));
+                parser.parse(sourceFile);
+                parser = newParser(inputs);
+                parser.setProgramCache(new ProgramCache(cacheDirectory));
+            }
+            case BATCH -> {
+                return runLoaded(inputs, false);
+            }
+            case SCHEDULED -> {
+                return runLoaded(inputs, true);
+            }
+        }
+        return outcome(parser, parser.parse(sourceFile));
+    }
+
+    private Outcome runSliced(FileParser parser) throws IOException {
+        SILFile silFile = new SILFile();
+        silFile.initializeSILFileState(MappedSourceText.map(sourceFile));
+        if (!silFile.getLoadErrors().isEmpty())
+            return outcome(parser, parser.execute(silFile, sourceFile.getName()));
+        parser.start(silFile);
+        while (!parser.isFinished()) {
+            parser.step(1 + random.nextInt(7));
+        }
+        return outcome(parser, parser.getExitStatus());
+    }
+
+    private Outcome runLoaded(int[] inputs, boolean isScheduled) throws IOException {
+        LoadedProgram program;
+        try {
+            program = LoadedProgram.load(sourceFile);
+        } catch (SILLoadException e) {
+            return new Outcome(FileParser.EXIT_LOAD_ERROR, e.getMessage() + System.lineSeparator(), null);
+        }
+        LoadedProgram.RunResult result;
+        if (isScheduled) {
+            try {
+                result = scheduler.submit(program, ProgramScheduler.Limits.UNLIMITED, inputs).get();
+            } catch (InterruptedException | ExecutionException e) {
+                throw new IllegalStateException(e);
+            }
+        } else {
+            result = program.run(inputs);
+        }
+        return new Outcome(result.exitStatus(), result.output(), null);
+    }
+
+    private FileParser newParser(int[] inputs) {
+        FileParser parser = new FileParser();
+        parser.setOutput(OutputSink.inMemory());
+        parser.setInput(InputSource.values(inputs));
+        return parser;
+    }
+
+    private static Outcome outcome(FileParser parser, int exitStatus) {
+        return new Outcome(exitStatus, parser.getOutput().toString(), describeVariables(parser));
+    }
+
+    /**
+     * @return the final value of every declared variable, by name
+     */
+    private static String describeVariables(FileParser parser) {
+        VariableStore variables = parser.getVariables();
+        SILFile silFile = parser.getSILFile();
+        if (variables == null || silFile == null)
+            return null;
+        VariableTable variableTable = silFile.getVariableTable();
+        Map<String, Object> values = new TreeMap<>();
+        for (int slot = 0; slot < variables.size(); slot++) {
+            values.put(variableTable.nameOf(slot), variables.isDeclared(slot) ? variables.get(slot) : "undeclared");
+        }
+        return describeVariables(values);
+    }
+
+    private static String describeVariables(Map<String, ?> values) {
+        StringBuilder description = new StringBuilder();
+        values.forEach((name, value) -> description.append(name).append('=').append(value).append(' '));
+        return description.toString().trim();
+    }
+
+    /**
+     * Applies reductions to the program for as long as one of them keeps an engine disagreeing
+     * @return the smallest program found that still shows a difference
+     */
+    GeneratedProgram shrink(GeneratedProgram program, int[] inputs) throws IOException {
+        boolean isReduced = true;
+        while (isReduced) {
+            isReduced = false;
+            for (GeneratedProgram candidate: program.reductions()) {
+                if (findDifference(candidate, inputs) != null) {
+                    program = candidate;
+                    isReduced = true;
+                    break;
+                }
+            }
+        }
+        return program;
+    }
+
+    /**
+     * Random program built as a tree of statements, loops, forward jumps and subroutine calls, so that it can be
+     * reduced without ever becoming invalid. Loops count a counter variable that the rest of the program never
+     * assigns, subroutines only call subroutines defined before them and jumps only go forward, so every
+     * program terminates. Variables are named with letters only, as the baseline interpreter reads digits in a
+     * name as a number.
+     */
+    static final class GeneratedProgram {
+
+        private static final int MAX_VARIABLE_COUNT = 5;
+        private static final int MAX_BLOCK_LENGTH = 6;
+        private static final int MAX_NESTING = 2;
+        private static final int MAX_LOOP_COUNT = 5;
+        private static final int MAX_SUBROUTINE_COUNT = 3;
+
+        // whether the program only uses what the baseline interpreter handles, see DifferentialFuzzer
+        private final boolean isBaselineSubset;
+        private final int variableCount;
+        private final int counterCount;
+        private final List<Node> main;
+        private final List<List<Node>> subroutines;
+
+        private GeneratedProgram(boolean isBaselineSubset, int variableCount, int counterCount, List<Node> main,
+                                 List<List<Node>> subroutines) {
+            this.isBaselineSubset = isBaselineSubset;
+            this.variableCount = variableCount;
+            this.counterCount = counterCount;
+            this.main = main;
+            this.subroutines = subroutines;
+        }
+
+        static GeneratedProgram generate(Random random, boolean isBaselineSubset) {
+            Generator generator = new Generator(random, 1 + random.nextInt(MAX_VARIABLE_COUNT), isBaselineSubset);
+            int subroutineCount = random.nextInt(MAX_SUBROUTINE_COUNT + 1);
+            List<List<Node>> subroutines = new ArrayList<>();
+            for (int i = 0; i < subroutineCount; i++) {
+                generator.callableCount = i;
+                subroutines.add(generator.block(1));
+            }
+            generator.callableCount = subroutineCount;
+            // most variables get a value first, reading them before is covered by the rest
+            List<Node> main = new ArrayList<>();
+            for (int i = 0; i < generator.variableCount; i++) {
+                if (random.nextInt(4) > 0)
+                    main.add(random.nextBoolean() ? new Statement("INPUT "+variableName(i), List.of())
+                            : new Statement("LET "+variableName(i)+" = %s",
+                                    List.of(new Expr.Constant(random.nextInt(100)))));
+            }
+            main.addAll(generator.block(0));
+            return new GeneratedProgram(isBaselineSubset, generator.variableCount, generator.counterCount, main,
+                    subroutines);
+        }
+
+        static String variableName(int index) {
+            return "v"+letters(index);
+        }
+
+        static String counterName(int index) {
+            return "c"+letters(index);
+        }
+
+        /**
+         * @return the index in base 26 with the digits a to z: a, b, ..., z, ba, bb, ...
+         */
+        private static String letters(int index) {
+            StringBuilder letters = new StringBuilder();
+            do {
+                letters.insert(0, (char) ('a' + index % 26));
+                index /= 26;
+            } while (index > 0);
+            return letters.toString();
+        }
+
+        /**
+         * @return the program with one reduction applied, for every possible reduction, smallest changes last
+         */
+        List<GeneratedProgram> reductions() {
+            List<GeneratedProgram> reductions = new ArrayList<>();
+            for (List<Node> reducedMain: reductionsOf(main)) {
+                reductions.add(new GeneratedProgram(isBaselineSubset, variableCount, counterCount, reducedMain,
+                        subroutines));
+            }
+            // drop the last subroutine once nothing calls it any more
+            int last = subroutines.size() - 1;
+            if (last >= 0 && !calls(main, last) && subroutines.stream().noneMatch(block -> calls(block, last)))
+                reductions.add(new GeneratedProgram(isBaselineSubset, variableCount, counterCount, main,
+                        subroutines.subList(0, last)));
+            for (int i = 0; i < subroutines.size(); i++) {
+                for (List<Node> reducedSubroutine: reductionsOf(subroutines.get(i))) {
+                    List<List<Node>> reducedSubroutines = new ArrayList<>(subroutines);
+                    reducedSubroutines.set(i, reducedSubroutine);
+                    reductions.add(new GeneratedProgram(isBaselineSubset, variableCount, counterCount, main,
+                            reducedSubroutines));
+                }
+            }
+            return reductions;
+        }
+
+        private static boolean calls(List<Node> block, int subroutine) {
+            for (Node node: block) {
+                if (node instanceof Call call && call.subroutine() == subroutine)
+                    return true;
+                if (node.nested() != null && calls(node.nested(), subroutine))
+                    return true;
+            }
+            return false;
+        }
+
+        private static List<List<Node>> reductionsOf(List<Node> block) {
+            List<List<Node>> reductions = new ArrayList<>();
+            // remove a node
+            for (int i = 0; i < block.size(); i++) {
+                List<Node> reduced = new ArrayList<>(block);
+                reduced.remove(i);
+                reductions.add(reduced);
+            }
+            // replace a node by its nested nodes, or by a smaller version of itself
+            for (int i = 0; i < block.size(); i++) {
+                Node node = block.get(i);
+                List<Node> nested = node.nested();
+                if (nested != null) {
+                    List<Node> inlined = new ArrayList<>(block.subList(0, i));
+                    inlined.addAll(nested);
+                    inlined.addAll(block.subList(i + 1, block.size()));
+                    reductions.add(inlined);
+                }
+                for (Node reducedNode: node.reductions()) {
+                    List<Node> reduced = new ArrayList<>(block);
+                    reduced.set(i, reducedNode);
+                    reductions.add(reduced);
+                }
+            }
+            return reductions;
+        }
+
+        String toSource() {
+            Emitter emitter = new Emitter(isBaselineSubset);
+            StringBuilder declaration = new StringBuilder("INTEGER ");
+            for (int i = 0; i < variableCount; i++) {
+                declaration.append(i == 0 ? "" : ", ").append(variableName(i));
+            }
+            for (int i = 0; i < counterCount; i++) {
+                declaration.append(", ").append(counterName(i));
+            }
+            emitter.add(declaration.toString());
+            emitter.emit(main);
+            emitter.add("END");
+            int[] subroutineLines = new int[subroutines.size()];
+            for (int i = 0; i < subroutines.size(); i++) {
+                subroutineLines[i] = emitter.nextLineNumber();
+                emitter.emit(subroutines.get(i));
+                emitter.add("RET");
+            }
+            return emitter.toSource(subroutineLines);
+        }
+    }
+
+    /**
+     * Creates random nodes
+     */
+    private static final class Generator {
+
+        private final Random random;
+        private final int variableCount;
+        // leaves out unary minus and !=, which the baseline interpreter does not handle
+        private final boolean isBaselineSubset;
+        private int counterCount;
+        // subroutines the block being generated may call
+        private int callableCount;
+
+        Generator(Random random, int variableCount, boolean isBaselineSubset) {
+            this.random = random;
+            this.variableCount = variableCount;
+            this.isBaselineSubset = isBaselineSubset;
+        }
+
+        List<Node> block(int nesting) {
+            int length = 1 + random.nextInt(GeneratedProgram.MAX_BLOCK_LENGTH);
+            List<Node> block = new ArrayList<>();
+            for (int i = 0; i < length; i++) {
+                block.add(node(nesting));
+            }
+            return block;
+        }
+
+        private Node node(int nesting) {
+            int choice = random.nextInt(nesting < GeneratedProgram.MAX_NESTING ? 14 : 11);
+            return switch (choice) {
+                case 0, 1, 2 -> new Statement("LET "+variable()+" = %s", List.of(expression(2)));
+                case 3 -> new Statement("PUSH %s", List.of(expression(2)));
+                case 4 -> new Statement("POP "+variable(), List.of());
+                case 5 -> new Statement("INPUT "+variable(), List.of());
+                case 6 -> new Statement("PRINT \"t"+random.nextInt(10)+" \"", List.of());
+                case 7 -> new Statement(random.nextBoolean() ? "PRINTLN %s" : "PRINT %s", List.of(expression(2)));
+                case 8 -> new Statement("IF %s "+relationalOperator()+" %s THEN "
+                        + (random.nextBoolean() ? "PRINTLN %s" : "PRINT %s"),
+                        List.of(expression(1), expression(1), expression(1)));
+                case 9 -> callableCount > 0 ? new Call(random.nextInt(callableCount))
+                        : new Statement("PRINTLN %s", List.of(expression(1)));
+                case 10 -> new Statement("LET "+variable()+" = %s", List.of(expression(1)));
+                case 11 -> new Loop(counterCount++, 1 + random.nextInt(GeneratedProgram.MAX_LOOP_COUNT),
+                        block(nesting + 1));
+                default -> new Skip(random.nextBoolean() ? List.of(expression(1), expression(1)) : List.of(),
+                        relationalOperator(), block(nesting + 1));
+            };
+        }
+
+        private String variable() {
+            return GeneratedProgram.variableName(random.nextInt(variableCount));
+        }
+
+        private String relationalOperator() {
+            return switch (random.nextInt(isBaselineSubset ? 3 : 4)) {
+                case 0 -> "<";
+                case 1 -> ">";
+                case 2 -> "=";
+                default -> "!=";
+            };
+        }
+
+        private Expr expression(int depth) {
+            int choice = random.nextInt(depth > 0 ? 6 : 3);
+            return switch (choice) {
+                case 0 -> new Expr.Constant(random.nextInt(10) == 0 ? 0 : random.nextInt(100));
+                case 1 -> new Expr.Variable(variable());
+                case 2 -> new Expr.Variable(counterCount > 0 && random.nextBoolean()
+                        ? GeneratedProgram.counterName(random.nextInt(counterCount)) : variable());
+                case 3 -> isBaselineSubset ? expression(depth - 1) : new Expr.Negation(expression(depth - 1));
+                default -> new Expr.Binary("+-*/".charAt(random.nextInt(4)), expression(depth - 1),
+                        expression(depth - 1));
+            };
+        }
+    }
+
+    /**
+     * Part of a generated program
+     */
+    private interface Node {
+
+        void emit(Emitter emitter);
+
+        /**
+         * @return the nodes this node wraps, null when it wraps none
+         */
+        default List<Node> nested() {
+            return null;
+        }
+
+        /**
+         * @return smaller versions of this node
+         */
+        default List<Node> reductions() {
+            return List.of();
+        }
+    }
+
+    /**
+     * A single line, the expressions are substituted for the %s of the format
+     */
+    private record Statement(String format, List<Expr> expressions) implements Node {
+
+        @Override
+        public void emit(Emitter emitter) {
+            emitter.add(String.format(format, expressions.stream().map(emitter::toSource).toArray()));
+        }
+
+        @Override
+        public List<Node> reductions() {
+            List<Node> reductions = new ArrayList<>();
+            for (int i = 0; i < expressions.size(); i++) {
+                for (Expr reducedExpression: expressions.get(i).reductions()) {
+                    List<Expr> reduced = new ArrayList<>(expressions);
+                    reduced.set(i, reducedExpression);
+                    reductions.add(new Statement(format, reduced));
+                }
+            }
+            return reductions;
+        }
+    }
+
+    /**
+     * Runs its body count times, counting with a counter variable of its own
+     */
+    private record Loop(int counter, int count, List<Node> body) implements Node {
+
+        @Override
+        public void emit(Emitter emitter) {
+            String counterName = GeneratedProgram.counterName(counter);
+            emitter.add("LET "+counterName+" = 0");
+            int start = emitter.nextLineNumber();
+            emitter.emit(body);
+            emitter.add("LET "+counterName+" = "+counterName+" + 1");
+            emitter.add("IF "+counterName+" < "+count+" THEN GOTO "+start);
+        }
+
+        @Override
+        public List<Node> nested() {
+            return body;
+        }
+
+        @Override
+        public List<Node> reductions() {
+            List<Node> reductions = new ArrayList<>();
+            if (count > 1)
+                reductions.add(new Loop(counter, 1, body));
+            for (List<Node> reducedBody: GeneratedProgram.reductionsOf(body)) {
+                reductions.add(new Loop(counter, count, reducedBody));
+            }
+            return reductions;
+        }
+    }
+
+    /**
+     * Jumps over its body, always when it has no condition
+     */
+    private record Skip(List<Expr> condition, String relationalOperator, List<Node> body) implements Node {
+
+        @Override
+        public void emit(Emitter emitter) {
+            int jump = condition.isEmpty() ? emitter.add("GOTO %d")
+                    : emitter.add("IF "+emitter.toSource(condition.get(0))+" "+relationalOperator+" "
+                            +emitter.toSource(condition.get(1))+" THEN GOTO %d");
+            emitter.emit(body);
+            emitter.setJumpTarget(jump, emitter.nextLineNumber());
+        }
+
+        @Override
+        public List<Node> nested() {
+            return body;
+        }
+
+        @Override
+        public List<Node> reductions() {
+            List<Node> reductions = new ArrayList<>();
+            for (List<Node> reducedBody: GeneratedProgram.reductionsOf(body)) {
+                reductions.add(new Skip(condition, relationalOperator, reducedBody));
+            }
+            return reductions;
+        }
+    }
+
+    private record Call(int subroutine) implements Node {
+
+        @Override
+        public void emit(Emitter emitter) {
+            emitter.addCall(subroutine);
+        }
+    }
+
+    /**
+     * Arithmetic expression of a generated statement
+     */
+    private interface Expr {
+
+        default List<Expr> reductions() {
+            return List.of();
+        }
+
+        /**
+         * @param isFlat whether the expression is written without parentheses and spaces, as the baseline
+         *               interpreter requires, its operators then bind by precedence
+         */
+        String toSource(boolean isFlat);
+
+        record Constant(int value) implements Expr {
+
+            @Override
+            public String toSource(boolean isFlat) {
+                return Integer.toString(value);
+            }
+        }
+
+        record Variable(String name) implements Expr {
+
+            @Override
+            public List<Expr> reductions() {
+                return List.of(new Constant(1));
+            }
+
+            @Override
+            public String toSource(boolean isFlat) {
+                return name;
+            }
+        }
+
+        record Negation(Expr operand) implements Expr {
+
+            @Override
+            public List<Expr> reductions() {
+                return List.of(operand, new Constant(1));
+            }
+
+            @Override
+            public String toSource(boolean isFlat) {
+                return "-"+operand.toSource(isFlat);
+            }
+        }
+
+        record Binary(char operator, Expr left, Expr right) implements Expr {
+
+            @Override
+            public List<Expr> reductions() {
+                return List.of(left, right, new Constant(1));
+            }
+
+            @Override
+            public String toSource(boolean isFlat) {
+                return isFlat ? left.toSource(true)+operator+right.toSource(true)
+                        : "("+left.toSource(false)+" "+operator+" "+right.toSource(false)+")";
+            }
+        }
+    }
+
+    /**
+     * Numbers the lines of a generated program and fills in the targets of its jumps and calls
+     */
+    private static final class Emitter {
+
+        private static final int LINE_STEP = 10;
+
+        // expressions are written in the syntax of the baseline interpreter
+        private final boolean isBaselineSyntax;
+        private final List<String> lines = new ArrayList<>();
+        private final List<Integer> jumpTargets = new ArrayList<>();
+        // subroutine called by every line, -1 for lines that are no GOSUB
+        private final List<Integer> calls = new ArrayList<>();
+
+        Emitter(boolean isBaselineSyntax) {
+            this.isBaselineSyntax = isBaselineSyntax;
+        }
+
+        String toSource(Expr expression) {
+            return expression.toSource(isBaselineSyntax);
+        }
+
+        /**
+         * @return the index of the line
+         */
+        int add(String line) {
+            lines.add(line);
+            jumpTargets.add(0);
+            calls.add(-1);
+            return lines.size() - 1;
+        }
+
+        void addCall(int subroutine) {
+            calls.set(add("GOSUB %d"), subroutine);
+        }
+
+        void emit(List<Node> block) {
+            for (Node node: block) {
+                node.emit(this);
+            }
+        }
+
+        int nextLineNumber() {
+            return (lines.size() + 1) * LINE_STEP;
+        }
+
+        void setJumpTarget(int line, int lineNumber) {
+            jumpTargets.set(line, lineNumber);
+        }
+
+        String toSource(int[] subroutineLines) {
+            StringBuilder source = new StringBuilder();
+            for (int i = 0; i < lines.size(); i++) {
+                int target = calls.get(i) >= 0 ? subroutineLines[calls.get(i)] : jumpTargets.get(i);
+                String line = lines.get(i).contains("%d") ? String.format(lines.get(i), target) : lines.get(i);
+                source.append((i + 1) * LINE_STEP).append(' ').append(line).append('\n');
+            }
+            return source.toString();
+        }
+    }
+}
@@ -0,0 +1,28 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DifferentialFuzzerTest {
+
+    // fixed, so that a difference found by the build can be reproduced with --seed
+    private static final long SEED = 1;
+    private static final int PROGRAM_COUNT = 300;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void everyEngineAgreesWithTheReference() throws IOException {
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        int failureCount = DifferentialFuzzer.fuzz(SEED, PROGRAM_COUNT, directory.toFile(),
+                new PrintStream(report, true, StandardCharsets.UTF_8));
+        assertEquals(0, failureCount, () -> report.toString(StandardCharsets.UTF_8));
+    }
+}
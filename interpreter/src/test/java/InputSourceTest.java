@@ -0,0 +1,96 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+class InputSourceTest {
+
+    private static InputSource stream(String text) {
+        return stream(text.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static InputSource stream(byte[] bytes) {
+        return new InputSource.StreamInputSource(new ByteArrayInputStream(bytes));
+    }
+
+    @Test
+    void readsOneLinePerInput() {
+        InputSource input = stream("1 -2\t+3\r\n2147483647\n-2147483648\n");
+        int[] values = new int[3];
+        input.readValues(values);
+        assertArrayEquals(new int[] {1, -2, 3}, values);
+        int[] value = new int[1];
+        input.readValues(value);
+        assertEquals(Integer.MAX_VALUE, value[0]);
+        input.readValues(value);
+        assertEquals(Integer.MIN_VALUE, value[0]);
+        assertFalse(input.hasNextInt());
+    }
+
+    @Test
+    void rejectsMissingMalformedAndSurplusValues() {
+        InputSource input = stream("1\n12a\n2147483648\n1 2\n\n");
+        int[] values = new int[2];
+        assertRejected(input, values, "Missing input value");
+        assertRejected(input, new int[1], "Invalid input value");
+        assertRejected(input, new int[1], "Invalid input value");
+        assertRejected(input, new int[1], "Too many input values");
+        assertRejected(input, new int[1], "Missing input value");
+        assertRejected(input, new int[1], "Missing input value");
+    }
+
+    @Test
+    void doesNotTakeAByteOf0xFFForTheEndOfInput() {
+        InputSource input = stream(new byte[] {'1', (byte) 0xFF, '\n', '7', '\n'});
+        assertRejected(input, new int[1], "Invalid input value");
+        int[] value = new int[1];
+        input.readValues(value);
+        assertEquals(7, value[0]);
+    }
+
+    @Test
+    void tokenizesAcrossLinesWithHasNextInt() {
+        InputSource input = stream("  4\n\n 5 x\n");
+        assertTrue(input.hasNextInt());
+        assertEquals(4, input.nextInt());
+        assertTrue(input.isLastValueValid());
+        assertEquals(5, input.nextInt());
+        input.nextInt();
+        assertFalse(input.isLastValueValid());
+        assertFalse(input.hasNextInt());
+    }
+
+    @Test
+    void readsLinesLongerThanTheBuffer() {
+        StringBuilder text = new StringBuilder();
+        int count = 20_000;
+        for (int i = 0; i < count; i++) {
+            text.append(i).append(' ');
+        }
+        InputSource input = stream(text.append('\n').toString());
+        int[] values = new int[count];
+        input.readValues(values);
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, values[i]);
+        }
+    }
+
+    @Test
+    void takesValuesInOrder() {
+        InputSource input = InputSource.values(1, 2, 3);
+        int[] values = new int[2];
+        input.readValues(values);
+        assertArrayEquals(new int[] {1, 2}, values);
+        assertRejected(input, values, "Missing input value");
+    }
+
+    private static void assertRejected(InputSource input, int[] values, String message) {
+        assertEquals(message, assertThrows(SILRuntimeException.class, () -> input.readValues(values)).getMessage());
+    }
+}
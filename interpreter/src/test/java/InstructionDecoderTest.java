@@ -0,0 +1,71 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class InstructionDecoderTest {
+
+    private final VariableTable variableTable = new VariableTable();
+    private final InstructionDecoder decoder = new InstructionDecoder(variableTable);
+    private final SILLexer lexer = new SILLexer();
+
+    private Instruction decode(String line) {
+        assertTrue(lexer.tokenize(line, 0, line.length(), 1), lexer::getErrorMessage);
+        return decoder.decode(lexer);
+    }
+
+    @Test
+    void resolvesVariablesToSlots() {
+        Instruction declaration = decode("10 INTEGER a, b");
+        assertEquals(Opcode.INTEGER, declaration.opcode);
+        assertEquals(10, declaration.lineNumber);
+        assertArrayEquals(new String[] {"a", "b"}, declaration.variableNames);
+        assertArrayEquals(new int[] {0, 1}, declaration.variableSlots);
+        Instruction assignment = decode("20 LET b = a + 1");
+        assertEquals(Opcode.LET, assignment.opcode);
+        assertEquals(1, assignment.variableSlot);
+        assertEquals("a + 1", assignment.expression.toString());
+    }
+
+    @Test
+    void keepsOperatorPrecedenceAndParentheses() {
+        assertEquals("a + (b * 2)", decode("10 PUSH a + b * 2").expression.toString());
+        assertEquals("(a + b) * 2", decode("20 PUSH (a + b) * 2").expression.toString());
+        assertEquals("-(a - 1)", decode("30 PRINT -(a - 1)").expression.toString());
+    }
+
+    @Test
+    void decodesConditionalsWithTheirThenInstruction() {
+        Instruction conditional = decode("10 IF a + 1 != b THEN GOTO 40");
+        assertEquals(Opcode.IF, conditional.opcode);
+        assertEquals('!', conditional.relationalOperator);
+        assertEquals("a + 1", conditional.leftExpression.toString());
+        assertEquals("b", conditional.rightExpression.toString());
+        assertEquals(Opcode.GOTO, conditional.thenInstruction.opcode);
+        assertEquals(40, conditional.thenInstruction.targetLineNumber);
+        Instruction print = decode("20 IF a < 3 THEN PRINTLN \"small\"").thenInstruction;
+        assertEquals(Opcode.PRINTLN, print.opcode);
+        assertEquals("small", print.text);
+        assertNull(print.expression);
+    }
+
+    @Test
+    void decodesMalformedLinesAsInvalidWithTheirMessage() {
+        assertInvalid("Syntax error occurred while parsing", "10 a = 1");
+        assertInvalid("Syntax error occurred while parsing", "20 THEN GOTO 10");
+        assertInvalid("Not a valid variable name", "30 INTEGER a b");
+        assertInvalid("Invalid initialization", "40 LET a 1");
+        assertInvalid("Invalid conditional statement", "50 IF a < 1 GOTO 10");
+        assertInvalid("If clause doesn't have a valid relational operator", "60 IF a THEN GOTO 10");
+        assertInvalid("Invalid line number", "70 GOTO a");
+        assertInvalid("Invalid expression", "80 PRINT a +");
+    }
+
+    private void assertInvalid(String errorMessage, String line) {
+        Instruction instruction = decode(line);
+        assertEquals(Opcode.INVALID, instruction.opcode, line);
+        assertEquals(errorMessage, instruction.errorMessage, line);
+    }
+}
@@ -0,0 +1,139 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ProgramCacheTest {
+
+    private static final String SOURCE = """
+            10 INTEGER a, count
+            20 INPUT a
+            30 LET count = -(a * 2) + 1
+            40 IF count < 0 THEN GOTO 70
+            50 GOSUB 80
+            60 PRINTLN "done"
+            70 END
+            80 PUSH count
+            90 POP a
+            100 PRINT a
+            110 RET
+            """;
+    // magic, format version, source hash, payload length and CRC32
+    private static final int HEADER_LENGTH = 48;
+
+    @TempDir
+    Path directory;
+
+    private File sourceFile;
+    private File cacheFile;
+
+    @BeforeEach
+    void writeSource() throws IOException {
+        sourceFile = directory.resolve("program.sil").toFile();
+        Files.writeString(sourceFile.toPath(), SOURCE);
+        cacheFile = new File(sourceFile.getPath() + ".silc");
+    }
+
+    private static List<String> listing(SILFile silFile) {
+        return Arrays.stream(silFile.getInstructions())
+                .map(instruction -> instruction + " -> #" + instruction.targetIndex).toList();
+    }
+
+    private static SILFile loadFromSource() {
+        SILFile silFile = new SILFile();
+        silFile.initializeSILFileState(SOURCE);
+        return silFile;
+    }
+
+    @Test
+    void readsBackTheProgramItWrote() throws IOException {
+        SILFile loaded = new ProgramCache(null).load(sourceFile);
+        assertTrue(cacheFile.isFile());
+        long modified = cacheFile.lastModified();
+        SILFile cached = new ProgramCache(null).load(sourceFile);
+        assertEquals(modified, cacheFile.lastModified());
+        assertEquals(listing(loaded), listing(cached));
+        assertEquals(listing(loadFromSource()), listing(cached));
+        assertArrayEquals(loaded.getLineNumbers(), cached.getLineNumbers());
+        assertEquals(2, cached.getVariableTable().size());
+        assertEquals("count", cached.getVariableTable().nameOf(1));
+        assertEquals(List.of(), cached.getLoadErrors());
+    }
+
+    @Test
+    void keepsCacheFilesInTheCacheDirectory() throws IOException {
+        File cacheDirectory = directory.resolve("cache").toFile();
+        assertTrue(cacheDirectory.mkdir());
+        new ProgramCache(cacheDirectory).load(sourceFile);
+        File[] cacheFiles = cacheDirectory.listFiles();
+        assertEquals(1, cacheFiles.length);
+        assertTrue(cacheFiles[0].getName().endsWith(".silc"));
+        assertEquals(listing(loadFromSource()), listing(new ProgramCache(cacheDirectory).load(sourceFile)));
+    }
+
+    @Test
+    void loadsAChangedSourceAgain() throws IOException {
+        new ProgramCache(null).load(sourceFile);
+        Files.writeString(sourceFile.toPath(), "10 PRINTLN \"changed\"\n");
+        SILFile silFile = new ProgramCache(null).load(sourceFile);
+        assertEquals(List.of("10 PRINTLN \"changed\" -> #0"), listing(silFile));
+    }
+
+    @Test
+    void ignoresACacheFileThatFailsItsChecksum() throws IOException {
+        new ProgramCache(null).load(sourceFile);
+        byte[] bytes = Files.readAllBytes(cacheFile.toPath());
+        bytes[bytes.length - 3] ^= 0x55;
+        Files.write(cacheFile.toPath(), bytes);
+        assertEquals(listing(loadFromSource()), listing(new ProgramCache(null).load(sourceFile)));
+        assertNotEquals(Arrays.toString(bytes), Arrays.toString(Files.readAllBytes(cacheFile.toPath())));
+    }
+
+    @Test
+    void ignoresATruncatedCacheFile() throws IOException {
+        new ProgramCache(null).load(sourceFile);
+        byte[] bytes = Files.readAllBytes(cacheFile.toPath());
+        Files.write(cacheFile.toPath(), Arrays.copyOf(bytes, bytes.length / 2));
+        assertEquals(listing(loadFromSource()), listing(new ProgramCache(null).load(sourceFile)));
+        Files.write(cacheFile.toPath(), Arrays.copyOf(bytes, 10));
+        assertEquals(listing(loadFromSource()), listing(new ProgramCache(null).load(sourceFile)));
+    }
+
+    @Test
+    void ignoresCountsOutOfRangeWithAValidChecksum() throws IOException {
+        new ProgramCache(null).load(sourceFile);
+        byte[] bytes = Files.readAllBytes(cacheFile.toPath());
+        for (int variableCount: new int[] {-1, 2_000_000_000}) {
+            // the variable count is the first value of the payload
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.clone());
+            buffer.putInt(HEADER_LENGTH, variableCount);
+            CRC32 crc = new CRC32();
+            crc.update(buffer.array(), HEADER_LENGTH, bytes.length - HEADER_LENGTH);
+            buffer.putInt(HEADER_LENGTH - 4, (int) crc.getValue());
+            Files.write(cacheFile.toPath(), buffer.array());
+            assertEquals(listing(loadFromSource()), listing(new ProgramCache(null).load(sourceFile)));
+        }
+    }
+
+    @Test
+    void doesNotCacheProgramsWithLoadErrors() throws IOException {
+        Files.writeString(sourceFile.toPath(), "10 GOTO 20\n");
+        SILFile silFile = new ProgramCache(null).load(sourceFile);
+        assertEquals(List.of("Line 20 not found at line 10"), silFile.getLoadErrors());
+        assertFalse(cacheFile.exists());
+    }
+}
@@ -0,0 +1,104 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class ProgramOptimizerTest {
+
+    private static SILFile load(String source) {
+        SILFile silFile = new SILFile();
+        silFile.initializeSILFileState(source);
+        assertEquals(List.of(), silFile.getLoadErrors());
+        return silFile;
+    }
+
+    /**
+     * @return every instruction as source, jumps followed by the index of their target
+     */
+    private static List<String> listing(Instruction[] instructions) {
+        return Arrays.stream(instructions)
+                .map(instruction -> instruction + (instruction.opcode == Opcode.GOTO
+                        || instruction.opcode == Opcode.GOSUB || instruction.opcode == Opcode.BRANCH
+                        ? " -> #" + instruction.targetIndex : ""))
+                .toList();
+    }
+
+    @Test
+    void foldsConstantsAndDropsIdentityOperations() {
+        SILFile silFile = load("""
+                10 INTEGER a
+                20 LET a = 2 * (3 + 4)
+                30 PRINTLN a * 1 + 0
+                40 PRINTLN -(-a)
+                50 PRINTLN a / 0
+                """);
+        ProgramOptimizer.optimize(silFile);
+        assertEquals(List.of("10 INTEGER a", "20 LET a = 14", "30 PRINTLN a", "40 PRINTLN a", "50 PRINTLN a / 0"),
+                listing(silFile.getInstructions()));
+    }
+
+    @Test
+    void replacesConstantConditionsByTheirOutcome() {
+        SILFile silFile = load("""
+                10 IF 1 < 2 THEN PRINTLN "taken"
+                20 IF 2 < 1 THEN PRINTLN "skipped"
+                30 END
+                """);
+        ProgramOptimizer.optimize(silFile);
+        assertEquals(List.of("10 PRINTLN \"taken\"", "30 END"), listing(silFile.getInstructions()));
+    }
+
+    @Test
+    void threadsJumpsAndFusesConditionalGotos() {
+        SILFile silFile = load("""
+                10 INTEGER a
+                20 INPUT a
+                30 IF a > 0 THEN GOTO 60
+                40 GOTO 80
+                50 PRINTLN "unreachable"
+                60 GOTO 70
+                70 GOTO 90
+                80 PRINTLN a
+                90 END
+                """);
+        ProgramOptimizer.optimize(silFile);
+        assertEquals(List.of("10 INTEGER a", "20 INPUT a", "30 IF a > 0 THEN GOTO 90 -> #4", "80 PRINTLN a",
+                "90 END"), listing(silFile.getInstructions()));
+        assertSame(Opcode.BRANCH, silFile.getInstructions()[2].opcode);
+    }
+
+    @Test
+    void replacesAGotoToEndByEnd() {
+        SILFile silFile = load("""
+                10 GOSUB 40
+                20 GOTO 60
+                30 PRINTLN "unreachable"
+                40 PRINTLN "subroutine"
+                50 RET
+                60 END
+                """);
+        ProgramOptimizer.optimize(silFile);
+        // the END at line 60 cannot be reached anymore
+        assertEquals(List.of("10 GOSUB 40 -> #2", "20 END", "40 PRINTLN \"subroutine\"", "50 RET"),
+                listing(silFile.getInstructions()));
+    }
+
+    @Test
+    void leavesTheInstructionsOfTheLoadedProgramUnchanged() {
+        SILFile silFile = load("""
+                10 INTEGER a
+                20 LET a = 1 + 2
+                30 IF a > 1 + 1 THEN GOTO 50
+                40 GOTO 50
+                50 GOTO 60
+                60 PRINTLN a
+                """);
+        Instruction[] instructions = silFile.getInstructions();
+        List<String> before = listing(instructions);
+        ProgramOptimizer.optimize(silFile);
+        assertEquals(before, listing(instructions));
+    }
+}
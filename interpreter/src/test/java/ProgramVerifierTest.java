@@ -0,0 +1,70 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class ProgramVerifierTest {
+
+    private static List<String> loadErrors(String source) {
+        SILFile silFile = new SILFile();
+        silFile.initializeSILFileState(source);
+        return silFile.getLoadErrors();
+    }
+
+    @Test
+    void acceptsAValidProgram() {
+        assertEquals(List.of(), loadErrors("""
+                10 INTEGER a
+                20 INPUT a
+                30 GOSUB 60
+                40 PRINTLN a
+                50 END
+                60 LET a = a * 2
+                70 RET
+                """));
+    }
+
+    @Test
+    void reportsEveryProblemInLineOrder() {
+        assertEquals(List.of(
+                "Line 99 not found at line 20",
+                "b variable not declared at line 30",
+                "RET without GOSUB at line 40",
+                "Syntax error occurred while parsing at line 50"), loadErrors("""
+                10 INTEGER a
+                20 IF a > 0 THEN GOTO 99
+                30 LET a = b
+                40 RET
+                50 a = 1
+                """));
+    }
+
+    @Test
+    void requiresADeclarationOnEveryPathToAUse() {
+        assertEquals(List.of("a variable not declared at line 50"), loadErrors("""
+                10 INTEGER b
+                20 INPUT b
+                30 IF b > 0 THEN GOTO 50
+                40 INTEGER a
+                50 PRINTLN a
+                60 END
+                """));
+    }
+
+    @Test
+    void ignoresUndeclaredVariablesOnUnreachableLines() {
+        assertEquals(List.of(), loadErrors("""
+                10 END
+                20 PRINTLN a
+                """));
+    }
+
+    @Test
+    void reportsDuplicateLineNumbersAndLexicalErrors() {
+        assertEquals(List.of("Duplicate line number 10"), loadErrors("10 END\n10 END\n"));
+        assertEquals(List.of("Lexical error at line 2 column 10: Unterminated string"),
+                loadErrors("10 INTEGER a\n20 PRINT \"a\n30 END\n"));
+        assertEquals(List.of("The program has no instructions"), loadErrors(""));
+    }
+}
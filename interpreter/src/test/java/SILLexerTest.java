@@ -0,0 +1,67 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class SILLexerTest {
+
+    private final SILLexer lexer = new SILLexer();
+
+    private void tokenize(String line) {
+        assertTrue(lexer.tokenize(line, 0, line.length(), 1), lexer::getErrorMessage);
+    }
+
+    @Test
+    void splitsALineIntoTokens() {
+        tokenize("10 let a1 = (b + 25) * -3");
+        assertEquals(12, lexer.getTokenCount());
+        assertEquals(TokenType.LINE_NUMBER, lexer.getType(0));
+        assertEquals(10, lexer.getValue(0));
+        assertTrue(lexer.isKeyword(1, Keyword.LET));
+        assertEquals(TokenType.IDENTIFIER, lexer.getType(2));
+        assertEquals("a1", lexer.getText(2));
+        assertTrue(lexer.isOperator(3, '='));
+        assertTrue(lexer.isOperator(4, '('));
+        assertEquals(TokenType.INTEGER_LITERAL, lexer.getType(7));
+        assertEquals(25, lexer.getValue(7));
+        assertTrue(lexer.isOperator(10, '-'));
+        assertEquals(3, lexer.getValue(11));
+    }
+
+    @Test
+    void readsStringLiteralsWithoutTheirQuotes() {
+        tokenize("20 PRINTLN \"Hello, world\"");
+        assertEquals(TokenType.STRING_LITERAL, lexer.getType(2));
+        assertEquals("Hello, world", lexer.getText(2));
+        // the token starts after the opening quote
+        assertEquals(13, lexer.getColumn(2));
+    }
+
+    @Test
+    void tokenizesALineWithinALargerSource() {
+        String source = "10 END\n20 GOTO 10\n";
+        assertTrue(lexer.tokenize(source, 7, 17, 2));
+        assertEquals(3, lexer.getTokenCount());
+        assertEquals(20, lexer.getValue(0));
+        assertTrue(lexer.isKeyword(1, Keyword.GOTO));
+        assertEquals(10, lexer.getValue(2));
+        assertEquals(4, lexer.getColumn(1));
+    }
+
+    @Test
+    void reportsLexicalErrorsWithTheirPosition() {
+        String line = "30 LET a = 1 # 2";
+        assertFalse(lexer.tokenize(line, 0, line.length(), 7));
+        assertEquals("Lexical error at line 7 column 14: Unexpected character '#'", lexer.getErrorMessage());
+        line = "40 PRINT \"open";
+        assertFalse(lexer.tokenize(line, 0, line.length(), 8));
+        assertEquals("Lexical error at line 8 column 10: Unterminated string", lexer.getErrorMessage());
+        line = "50 LET a = 2147483648";
+        assertFalse(lexer.tokenize(line, 0, line.length(), 9));
+        assertEquals("Lexical error at line 9 column 12: Number too large", lexer.getErrorMessage());
+        line = "END";
+        assertFalse(lexer.tokenize(line, 0, line.length(), 10));
+        assertEquals("Lexical error at line 10 column 1: Line number expected", lexer.getErrorMessage());
+    }
+}